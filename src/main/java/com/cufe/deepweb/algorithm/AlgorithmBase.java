@@ -84,11 +84,52 @@ public abstract class AlgorithmBase {
         return query;
     }
 
+    /**
+     * get at most k queries which can be sent at the same time,
+     * the first one is got by getNextQuery(), the following ones are the picks which don't need any feedback
+     * @param k
+     * @return empty list if something error happen
+     */
+    public final List<String> getNextQueries(int k) {
+        List<String> queries = new ArrayList<>();
+        String first = getNextQuery();
+        if (first == null) return queries;
+        queries.add(first);
+        while (queries.size() < k) {
+            String nextQuery = generateFollowingQuery();
+            if (nextQuery == null) break;
+            logger.trace("get following query {}", nextQuery);
+            qList.add(nextQuery);
+            qCount++;
+            queries.add(nextQuery);
+        }
+        return queries;
+    }
+
+    /**
+     * the number of queries to generate in a batch when the scheduler can send the specified number of queries at the same time,
+     * the implementation class can override this method when more queries are known upfront
+     * @param parallelism
+     * @return
+     */
+    public int getBatchSize(int parallelism) {
+        return parallelism;
+    }
+
     /*
     the implementing class must implement this method to generate next query
     */
     protected abstract String generateQuery();
 
+    /**
+     * generate a query following the latest one without the feedback of the latest one,
+     * the implementation class can override this method to support batch generation
+     * @return null if can't generate the query without feedback
+     */
+    protected String generateFollowingQuery() {
+        return null;
+    }
+
 
     /**
      * do some initial operations for production mode
@@ -113,6 +154,51 @@ public abstract class AlgorithmBase {
         }
     }
 
+    /**
+     * invoked by the scheduler after the documents of current round have been downloaded and fed back,
+     * the implementation class can override this method to prepare the next inference in background
+     */
+    public void prefetch() {
+    }
+
+    /**
+     * invoked by the scheduler in pipelined mode while the documents of current query are downloading,
+     * the implementation class can override this method to infer the next query in advance,
+     * the inferred query should be committed in the next generateQuery() only when it's still valid
+     */
+    public void speculate() {
+    }
+
+    /**
+     * invoked by the scheduler at the end of each round with the successful download number of current query,
+     * the implementation class can override this method to learn from it
+     * @param downloadNum
+     */
+    public void feedback(int downloadNum) {
+    }
+
+    /**
+     * invoked by the scheduler at the end of each round with the deduplication counters of each query, in the order of the batch,
+     * the implementation class can override this method to judge the queries of a batch one by one
+     * @param query
+     * @param newNum the new info link number of the query
+     * @param cost the checked info link number of the query
+     */
+    public void record(String query, int newNum, int cost) {
+    }
+
+    /**
+     * invoked by the scheduler at the end of each round with the measured cost of each query, in the order of the batch,
+     * the implementation class can override this method to learn the cost of sending a query
+     * @param query
+     * @param pageNum the query link number
+     * @param linkNum the info link number
+     * @param probeMillis the time to confirm the total page number
+     * @param downloadMillis the time to download all the query links and info links
+     */
+    public void measure(String query, int pageNum, int linkNum, long probeMillis, long downloadMillis) {
+    }
+
     /**
      * the implementation class can override this method for doing some close operations
      */
@@ -1,11 +1,14 @@
 package com.cufe.deepweb.algorithm;
 
+import com.cufe.deepweb.common.index.DFHistogram;
 import com.cufe.deepweb.common.index.IndexClient;
+import com.cufe.deepweb.common.index.TermDocMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
 
 /**
  * the implementation of all-in algorithm
@@ -43,10 +46,20 @@ public class AllInAlgorithm extends SetCoverAlgorithm {
     }
 
     @Override
-    protected Map<String, Set<Integer>> getDocSetMap(String field, double low, double up) {
+    protected TermDocMatrix getDocSetMap(String field, double low, double up) {
         return client.getDocSetMap(field, low, up);
     }
 
+    @Override
+    protected TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+        return client.spillDocSetMap(field, low, up, dir);
+    }
+
+    @Override
+    protected DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+        return client.getDFHistogram(field, excludedTerms);
+    }
+
     @Override
     protected int getDocSize() {
         return client.getDocSize();
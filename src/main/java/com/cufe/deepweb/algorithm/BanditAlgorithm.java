@@ -0,0 +1,324 @@
+package com.cufe.deepweb.algorithm;
+
+import com.cufe.deepweb.common.dedu.Deduplicator;
+import com.cufe.deepweb.common.index.IndexClient;
+import com.cufe.deepweb.crawler.Constant;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * the implementation of bandit algorithm
+ * this algorithm doesn't build the set covering matrix, the candidate terms are harvested from the newly indexed documents incrementally,
+ * because a term wouldn't return new documents when it's sent again, the arms of the bandit are the DF buckets of candidate terms,
+ * the terms in bucket b have DF in [2^b, 2^(b+1)), and share the observed yield of the bucket,
+ * each time the bucket is chosen by UCB1, then the term with the biggest DF in the bucket is chosen
+ */
+public class BanditAlgorithm extends AlgorithmBase {
+    private final Logger logger = LoggerFactory.getLogger(BanditAlgorithm.class);
+    private static final int ARM_NUM = 32;
+    /**
+     * the client to operate underling index
+     */
+    private IndexClient client;
+    /**
+     * the deduplicator for getting coefficient in downloading
+     */
+    private Deduplicator dedu;
+    /**
+     * the lucene index's main field focused by this algorithm
+     */
+    private String mainField;
+    /**
+     * the term whose DF is lower than this value wouldn't be a candidate
+     */
+    private int minDF;
+    /**
+     * the weight of exploration in UCB1
+     */
+    private double exploration;
+    /**
+     * harvest new candidate terms every harvestInterval queries
+     */
+    private int harvestInterval;
+
+    /**
+     * all the harvested terms, the term ID is used in the arms
+     */
+    private BytesRefHash known;
+    /**
+     * the visited terms whose DF is lower than minDF, and their DF accumulated from the flushed sub indexes,
+     * so they needn't be looked up again when a merged sub index is visited
+     */
+    private BytesRefHash rejected;
+    private int[] rejectedDF;
+    private Arm[] arms;
+    /**
+     * the core cache keys of the sub indexes whose terms have been harvested
+     */
+    private Set<Object> visitedLeaves;
+    /**
+     * the selected queries, used to skip the harvested term which has been sent
+     */
+    private Set<String> usedTerms;
+    /**
+     * the arm of the latest query, -1 if the latest query isn't chosen by bandit
+     */
+    private int lastArm;
+    /**
+     * the download number of the latest query fed back by scheduler, -1 if no feedback
+     */
+    private int downloadNum;
+    private long totalPulls;
+    private int queryNum;
+
+    private BanditAlgorithm(Builder builder) {
+        super(builder);
+        client = builder.indexClient;
+        dedu = builder.deduplicator;
+        mainField = builder.mainField;
+        minDF = builder.minDF;
+        exploration = builder.exploration;
+        harvestInterval = builder.harvestInterval;
+        known = new BytesRefHash();
+        rejected = new BytesRefHash();
+        rejectedDF = new int[16];
+        arms = new Arm[ARM_NUM];
+        for (int i = 0; i < ARM_NUM; i++) {
+            arms[i] = new Arm();
+        }
+        visitedLeaves = Collections.newSetFromMap(new WeakHashMap<>());
+        usedTerms = null;
+        lastArm = -1;
+        downloadNum = -1;
+        totalPulls = 0;
+        queryNum = 0;
+    }
+
+    @Override
+    protected String generateQuery() {
+        if (usedTerms == null) {
+            usedTerms = new HashSet<>(getqList());
+        }
+        reward();
+        if (queryNum % harvestInterval == 0) {
+            harvest();
+        }
+        queryNum++;
+
+        String query = pull();
+        if (query == null) {
+            //all the harvested terms have been used, try to harvest again
+            harvest();
+            query = pull();
+        }
+        if (query == null) {
+            logger.error("there is no candidate term in bandit");
+            return null;
+        }
+        usedTerms.add(query);
+        return query;
+    }
+
+    /**
+     * record the download number of the latest query
+     * @param downloadNum
+     */
+    @Override
+    public void feedback(int downloadNum) {
+        this.downloadNum = downloadNum;
+    }
+
+    /**
+     * compute the yield per request of the latest query, and add it into the arm which the query belongs to
+     * the yield is the downloaded(or new) link number divided by the checked link number, so it's between 0 and 1
+     */
+    private void reward() {
+        int newNum = dedu.getNew();
+        int cost = dedu.getCost();
+        int gain = downloadNum >= 0 ? downloadNum : newNum;
+        downloadNum = -1;
+        if (lastArm < 0) {
+            return;
+        }
+        double r = cost == 0 ? 0 : Math.min(1.0, gain / (double) cost);
+        arms[lastArm].pulls++;
+        arms[lastArm].rewardSum += r;
+        totalPulls++;
+        logger.info("the yield of the latest query is {}, the mean yield of arm {} is {}", r, lastArm, arms[lastArm].mean());
+    }
+
+    /**
+     * collect the terms of the newly indexed documents into the arms,
+     * the terms are read from a near-real-time snapshot, so the index needn't be committed,
+     * the DF of a term is only looked up when it's never visited, or when its DF accumulated from the flushed sub indexes reaches minDF,
+     * the visited terms in a merged sub index are skipped, because its documents have been visited in the sub indexes merged into it
+     */
+    private void harvest() {
+        IndexClient.Snapshot snapshot = client.openSnapshot();
+        if (snapshot == null) {
+            logger.warn("the index has no data, no term is harvested");
+            return;
+        }
+        int before = known.size();
+        try {
+            snapshot.visitNewTerms(mainField, visitedLeaves, (term, leafDF, merged) -> {
+                if (known.find(term) >= 0) return;
+                int rejectedID = rejected.find(term);
+                int df;
+                if (rejectedID >= 0) {
+                    if (Boolean.TRUE.equals(merged)) return;
+                    df = merged == null ? snapshot.getDocFreq(mainField, term) : rejectedDF[rejectedID] + leafDF;
+                } else {
+                    //the term never visited only occurs in the new documents if the sub index is flushed
+                    df = Boolean.FALSE.equals(merged) ? leafDF : snapshot.getDocFreq(mainField, term);
+                }
+                //the term with small DF may grow up, so it would be checked again in later flushed sub index
+                if (df < minDF) {
+                    if (rejectedID < 0) {
+                        rejectedID = rejected.add(term);
+                        rejectedDF = ArrayUtil.grow(rejectedDF, rejectedID + 1);
+                    }
+                    rejectedDF[rejectedID] = df;
+                    return;
+                }
+                if (rejectedID >= 0) {
+                    //the accumulated DF is only a lower bound when the term occurs in several new sub indexes
+                    df = snapshot.getDocFreq(mainField, term);
+                }
+                int termID = known.add(term);
+                arms[31 - Integer.numberOfLeadingZeros(df)].terms.offer(new Candidate(termID, df));
+            });
+        } finally {
+            try {
+                snapshot.close();
+            } catch (IOException ex) {
+                logger.error("IOException happen when close index snapshot", ex);
+            }
+        }
+        if (known.size() > before) {
+            logger.info("harvest {} new candidate terms, the total candidate term number is {}", known.size() - before, known.size());
+        }
+    }
+
+    /**
+     * choose an arm by UCB1 and poll the term with the biggest DF in it
+     * @return null if all the arms are empty
+     */
+    private String pull() {
+        BytesRef spare = new BytesRef();
+        while (true) {
+            int arm = -1;
+            double maxScore = 0;
+            for (int i = 0; i < ARM_NUM; i++) {
+                if (arms[i].terms.isEmpty()) continue;
+                double score = arms[i].score();
+                //when the score is identical, prefer the bucket with bigger DF
+                if (arm == -1 || score >= maxScore) {
+                    arm = i;
+                    maxScore = score;
+                }
+            }
+            if (arm == -1) {
+                return null;
+            }
+            Candidate candidate = arms[arm].terms.poll();
+            String term = known.get(candidate.termID, spare).utf8ToString();
+            if (usedTerms.contains(term)) {
+                continue;
+            }
+            lastArm = arm;
+            logger.trace("choose arm {} whose score is {}, the term's DF is {}", arm, maxScore, candidate.df);
+            return term;
+        }
+    }
+
+    /**
+     * a DF bucket of candidate terms
+     */
+    private class Arm {
+        /**
+         * the candidate terms in this bucket, biggest DF first
+         */
+        private final PriorityQueue<Candidate> terms = new PriorityQueue<>();
+        private int pulls = 0;
+        private double rewardSum = 0;
+
+        double mean() {
+            return pulls == 0 ? 0 : rewardSum / pulls;
+        }
+
+        /**
+         * the UCB1 score, the arm which has never been pulled would be explored first
+         * @return
+         */
+        double score() {
+            if (pulls == 0) {
+                return Double.MAX_VALUE;
+            }
+            return mean() + exploration * Math.sqrt(2 * Math.log(totalPulls) / pulls);
+        }
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final int termID;
+        /**
+         * the DF when harvesting
+         */
+        private final int df;
+        Candidate(int termID, int df) {
+            this.termID = termID;
+            this.df = df;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int c = Integer.compare(o.df, df);
+            if (c != 0) return c;
+            return Integer.compare(termID, o.termID);
+        }
+    }
+
+    public static class Builder extends AlgorithmBase.Builder {
+        private IndexClient indexClient;
+        private Deduplicator deduplicator;
+        private String mainField = Constant.FT_INDEX_FIELD;
+        private int minDF = 2;
+        private double exploration = 1.0;
+        private int harvestInterval = 1;
+
+        public Builder(IndexClient client, Deduplicator dedu) {
+            indexClient = client;
+            deduplicator = dedu;
+        }
+
+        public Builder setMainField(String mainField) {
+            this.mainField = mainField;
+            return this;
+        }
+
+        public Builder setMinDF(int minDF) {
+            this.minDF = Math.max(minDF, 1);
+            return this;
+        }
+
+        public Builder setExploration(double exploration) {
+            this.exploration = exploration;
+            return this;
+        }
+
+        public Builder setHarvestInterval(int harvestInterval) {
+            this.harvestInterval = Math.max(harvestInterval, 1);
+            return this;
+        }
+
+        public BanditAlgorithm build() {
+            return new BanditAlgorithm(this);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.cufe.deepweb.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * the per-site cost model of sending a query, learned from the completed rounds
+ * the crawl time of a query is made up of the probing time to confirm the total page number,
+ * and the downloading time of its result pages and the info links in them, so it's estimated as
+ * probeSeconds + df * linksPerDF / linksPerPage * pageSeconds,
+ * each factor is the exponential moving average of the observed values, so it can follow the change of the site
+ * many sites return at most a fixed number of results for a query, when several queries hit the same biggest page number,
+ * the page number is regarded as the result cap of the site, the results beyond it can't be reached by the query
+ * this class is thread-safe
+ */
+public class CostModel {
+    private final Logger logger = LoggerFactory.getLogger(CostModel.class);
+    /**
+     * the number of queries hitting the same biggest page number to confirm the result cap
+     */
+    private static final int PLATEAU_NUM = 3;
+    /**
+     * the weight of the newest observation in the moving average
+     */
+    private final double alpha;
+    /**
+     * the seconds to confirm the total page number of a query
+     */
+    private double probeSeconds = -1;
+    /**
+     * the seconds to download a result page and the info links in it
+     */
+    private double pageSeconds = -1;
+    /**
+     * the info link number in a result page
+     */
+    private double linksPerPage = -1;
+    /**
+     * the info link number returned by the site for each document containing the query in local index
+     */
+    private double linksPerDF = -1;
+    /**
+     * the biggest page number of all the queries, and the number of queries hitting it
+     */
+    private int maxPageNum = 0;
+    private int maxPageHits = 0;
+
+    public CostModel() {
+        this(0.3);
+    }
+
+    /**
+     * @param alpha the weight of the newest observation in the moving average, between 0 and 1
+     */
+    public CostModel(double alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * load the link numbers of the history rounds, such as the sum of fLinkNum and sLinkNum in status table,
+     * there is no time in history, so only the info link number per page can be learned from it
+     * @param pageNum the total query link number
+     * @param linkNum the total info link number
+     */
+    public synchronized void loadHistory(int pageNum, int linkNum) {
+        if (pageNum > 0) {
+            linksPerPage = linkNum / (double) pageNum;
+            logger.info("load {} query links and {} info links from history, the info link number per page is {}", pageNum, linkNum, linksPerPage);
+        }
+    }
+
+    /**
+     * record the measured cost of a completed round
+     * @param df the local document frequency of the query when it's selected, -1 if unknown
+     * @param pageNum the query link number of the query
+     * @param linkNum the info link number of the query
+     * @param probeMillis the time to confirm the total page number
+     * @param downloadMillis the time to download all the query links and info links
+     */
+    public synchronized void record(int df, int pageNum, int linkNum, long probeMillis, long downloadMillis) {
+        probeSeconds = average(probeSeconds, probeMillis / 1000.0);
+        if (pageNum > 0) {
+            pageSeconds = average(pageSeconds, downloadMillis / 1000.0 / pageNum);
+            linksPerPage = average(linksPerPage, linkNum / (double) pageNum);
+        }
+        if (pageNum > maxPageNum) {
+            maxPageNum = pageNum;
+            maxPageHits = 1;
+        } else if (pageNum > 0 && pageNum == maxPageNum) {
+            maxPageHits++;
+            if (maxPageHits == PLATEAU_NUM) {
+                logger.info("{} queries hit the same page number {}, regard it as the result cap", PLATEAU_NUM, maxPageNum);
+            }
+        }
+        //the truncated result list can't reflect the link number per DF
+        if (df > 0 && (getCapPageNum() < 0 || pageNum < getCapPageNum())) {
+            linksPerDF = average(linksPerDF, linkNum / (double) df);
+        }
+        logger.info("cost model: probe {}s, {}s per page, {} links per page, {} links per DF", probeSeconds, pageSeconds, linksPerPage, linksPerDF);
+    }
+
+    private double average(double old, double observed) {
+        return old < 0 ? observed : alpha * observed + (1 - alpha) * old;
+    }
+
+    /**
+     * judge whether all the factors have been observed, if not, the estimation isn't available
+     * @return
+     */
+    public synchronized boolean isReady() {
+        return probeSeconds >= 0 && pageSeconds >= 0 && linksPerPage > 0 && linksPerDF >= 0;
+    }
+
+    /**
+     * the fixed seconds of sending a query
+     * @return
+     */
+    public synchronized double getFixedCost() {
+        return probeSeconds;
+    }
+
+    /**
+     * the seconds for each document containing the query in local index
+     * @return
+     */
+    public synchronized double getCostPerDF() {
+        return linksPerDF / linksPerPage * pageSeconds;
+    }
+
+    /**
+     * the result cap in page number
+     * @return -1 if the result cap hasn't been detected
+     */
+    public synchronized int getCapPageNum() {
+        return maxPageHits >= PLATEAU_NUM ? maxPageNum : -1;
+    }
+
+    /**
+     * the result cap in the unit of local document frequency,
+     * a query whose DF is bigger than it can only return part of the documents containing it
+     * @return positive infinity if the result cap hasn't been detected
+     */
+    public synchronized double getCapDF() {
+        if (getCapPageNum() < 0 || linksPerDF <= 0 || linksPerPage <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return getCapPageNum() * linksPerPage / linksPerDF;
+    }
+
+    /**
+     * estimate the crawl seconds of a query
+     * @param df the local document frequency of the query
+     * @return
+     */
+    public synchronized double estimate(int df) {
+        return getFixedCost() + Math.min(df, getCapDF()) * getCostPerDF();
+    }
+}
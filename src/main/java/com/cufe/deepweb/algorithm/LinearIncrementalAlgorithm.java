@@ -1,10 +1,13 @@
 package com.cufe.deepweb.algorithm;
 
+import com.cufe.deepweb.common.index.DFHistogram;
 import com.cufe.deepweb.common.index.IndexClient;
+import com.cufe.deepweb.common.index.TermDocMatrix;
 import com.cufe.deepweb.common.dedu.Deduplicator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -43,6 +46,10 @@ public class LinearIncrementalAlgorithm extends SetCoverAlgorithm {
     private static final String DATA_FILE = "qList.dat";
 
     private Queue<Double> stepQueue;
+    /**
+     * the deduplication counters of the queries in the latest batch, in the order of the batch
+     */
+    private final Queue<int[]> records = new ArrayDeque<>();
     private LinearIncrementalAlgorithm(Builder builder) {
         super(builder);
         stepLen = builder.stepLen;
@@ -64,19 +71,47 @@ public class LinearIncrementalAlgorithm extends SetCoverAlgorithm {
             logger.trace("first run isUpdate() method, just return true");
             dedu.getNew();
             dedu.getCost();
+            records.clear();
             return true;
         }
 
-        //after generating first term in current turn's set covering, clear the stepQueue and initialize newV 、 costV
-        if (scSize == 1) {
-            stepQueue.clear();
-            newV = 0;
-            costV = getBuildTableCost();
+        boolean update;
+        if (records.isEmpty()) {
+            update = step(dedu.getNew(), dedu.getCost());
+        } else {
+            //the queries of a batch are judged one by one, the global counters are covered by them
+            dedu.getNew();
+            dedu.getCost();
+            update = false;
+            while (!update && !records.isEmpty()) {
+                int[] counters = records.poll();
+                update = step(counters[0], counters[1]);
+            }
+            records.clear();
         }
+        return update;
+    }
+
+    /**
+     * clear the stepQueue and initialize newV 、 costV at the beginning of each turn's set covering
+     */
+    @Override
+    protected void onNewTurn() {
+        stepQueue.clear();
+        newV = 0;
+        costV = getBuildTableCost();
+    }
 
+    /**
+     * accumulate newV and costV by a query, and judge whether to update after it
+     * @param newNum
+     * @param cost
+     * @return
+     */
+    private boolean step(int newNum, int cost) {
         //accumulate newV and costV for computing quality
-        newV += dedu.getNew();
-        costV += getModifyTableCost() + dedu.getCost();
+        newV += newNum;
+        costV += getModifyTableCost() + cost;
 
         if(stepQueue.size() < stepLen){//record the first n quality
             stepQueue.offer(newV / (double)costV);
@@ -94,14 +129,67 @@ public class LinearIncrementalAlgorithm extends SetCoverAlgorithm {
     }
 
     @Override
-    protected final Map<String, Set<Integer>> getDocSetMap(String field, double low, double up) {
+    public void record(String query, int newNum, int cost) {
+        records.offer(new int[]{newNum, cost});
+    }
+
+    @Override
+    protected final TermDocMatrix getDocSetMap(String field, double low, double up) {
         return si.getDocSetMap(field,low,up);
     }
 
+    @Override
+    protected final TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+        return si.spillDocSetMap(field, low, up, dir);
+    }
+
+    @Override
+    protected final DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+        return si.getDFHistogram(field, excludedTerms);
+    }
+
     @Override
     protected final int getDocSize() {
         return si.getDocSize();
     }
+
+    @Override
+    protected MatrixSource openSnapshot() {
+        IndexClient.Snapshot snapshot = si.openSnapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        return new MatrixSource() {
+            @Override
+            public TermDocMatrix getDocSetMap(String field, double low, double up) {
+                return snapshot.getDocSetMap(field, low, up);
+            }
+
+            @Override
+            public TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+                return snapshot.spillDocSetMap(field, low, up, dir);
+            }
+
+            @Override
+            public DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+                return snapshot.getDFHistogram(field, excludedTerms);
+            }
+
+            @Override
+            public int getDocSize() {
+                return snapshot.getDocSize();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    snapshot.close();
+                } catch (IOException ex) {
+                    logger.error("IOException happen when close index snapshot", ex);
+                }
+            }
+        };
+    }
     /*
     构造器
      */
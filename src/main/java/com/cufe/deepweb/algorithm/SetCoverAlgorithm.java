@@ -1,13 +1,25 @@
 package com.cufe.deepweb.algorithm;
 
 import com.cufe.deepweb.common.Utils;
+import com.cufe.deepweb.common.index.DFHistogram;
+import com.cufe.deepweb.common.index.DocIdBitmap;
+import com.cufe.deepweb.common.index.OffHeapBitSet;
+import com.cufe.deepweb.common.index.SpilledPostings;
+import com.cufe.deepweb.common.index.TermDocMatrix;
 import com.cufe.deepweb.crawler.Constant;
 import com.google.common.base.Stopwatch;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 
 /**
  * set-covering algorithm: this class only focus on the implementation of set-covering algorithm，
@@ -15,6 +27,22 @@ import java.util.concurrent.TimeUnit;
  */
 public abstract class SetCoverAlgorithm extends AlgorithmBase {
     private final Logger logger = LoggerFactory.getLogger(SetCoverAlgorithm.class);
+    /**
+     * the minimal fixed cost in seconds, avoid the cost of a query to be zero
+     */
+    private static final double MIN_COST = 0.001;
+    /**
+     * the minimal number of partner terms tried for each capped term when building conjunctive queries
+     */
+    private static final int MIN_PARTNER_NUM = 16;
+    /**
+     * the maximal number of conjunctive queries sent to the probe in a turn, each of them costs requests to the site
+     */
+    private static final int MAX_PROBE_NUM = 32;
+    /**
+     * the placeholder of a term in the conjunction syntax
+     */
+    private static final String TERM_PLACEHOLDER = "%s";
     /**
      * the lucene index's main field focused by this algorithm
      */
@@ -29,9 +57,56 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
      */
     private double threshold;
     /**
-     * the cost for sending a query
+     * the cost for sending a query, used before the cost model has learned from enough rounds
      */
     private int sendingCost;
+    /**
+     * the measured cost of sending a query on the target site
+     */
+    private CostModel costModel;
+    /**
+     * the cost of a query is fixedCost + df * costPerDF, they are fixed in a turn's set covering,
+     * so the rate of a term never increases in the turn and the lazy-greedy heap stays valid
+     */
+    private double fixedCost;
+    private double costPerDF;
+    /**
+     * the result cap of the site in the unit of DF, a term whose DF is bigger than it can't return all its documents
+     */
+    private double capDF;
+    /**
+     * the initial DF of the latest pick, -1 if the latest query isn't selected by set covering
+     */
+    private int lastQueryDF;
+    /**
+     * the initial DF of each query in the latest batch, used to learn the cost of each query
+     */
+    private final Map<String, Integer> queryDFs = new HashMap<>();
+    /**
+     * the next greedy pick inferred while the latest query is downloading, null if there is no speculation,
+     * and the matrix modifying cost and initial DF of it
+     */
+    private String speculated;
+    private long speculatedCost;
+    private int speculatedDF;
+    /**
+     * the directory to spill the docID sets in out-of-core mode, null if the docID sets are kept in heap
+     */
+    private Path spillPath;
+    /**
+     * the maximum number of posting intersections computed for conjunctive queries in a turn, 0 if disabled
+     */
+    private int pairBudget;
+    /**
+     * the conjunction syntax of the target site split by its two term placeholders, such as "+", " +", "" for "+%s +%s",
+     * a conjunctive query of more terms repeats the separator, null if the site's syntax is unknown
+     */
+    private String[] conjunctionSyntax;
+    /**
+     * confirm the total page number of a query on the target site, used to verify the conjunctive queries,
+     * null if the conjunctive queries can't be verified
+     */
+    private volatile ToIntFunction<String> pageNumProbe;
     /**
      * the cost for building the set covering matrix
      */
@@ -49,17 +124,83 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
      */
     private List<String> termList;
     /**
-     * the each term's initial document frequency at the beginning of current turn's set covering
+     * the candidate terms of current turn's set covering, only the term dictionary is used,
+     * a term is turned into String only when it's selected as query
+     */
+    private TermDocMatrix matrix;
+    /**
+     * the each term's docID set in set covering, indexed by term ID
+     */
+    private DocIdBitmap[] postings;
+    /**
+     * the each term's initial document frequency at the beginning of current turn's set covering, indexed by term ID
+     */
+    private int[] df;
+    /**
+     * the each term's new value in set covering, indexed by term ID,
+     * this array is updated by the doc-to-terms adjacency when a term is selected
+     */
+    private int[] newV;
+    /**
+     * the doc-to-terms adjacency in CSR layout:
+     * the term IDs containing docID d are docTerms[docStart[d]] ... docTerms[docStart[d + 1] - 1]
+     * when the matrix is too big to build the adjacency, docTerms is null and the new value is computed by postings
+     */
+    private int[] docStart;
+    private int[] docTerms;
+    /**
+     * a bit set to store all the downloaded(logically) docID in current turn's set covering
+     */
+    private FixedBitSet s;
+    /**
+     * the coverage state in out-of-core mode, which replaces s
+     */
+    private OffHeapBitSet covered;
+    /**
+     * the number of docID in s
      */
-    private Map<String, Integer> df;
+    private int sSize;
     /**
-     * the each term's new docID set in set covering,this map would be updated every round
+     * the lazy-greedy heap of candidate terms, each entry's new value is an upper bound which may be stale,
+     * because the new value of a term can only decrease in set covering, an entry is re-evaluated only when it is on the top
      */
-    private Map<String, Set<Integer>> newMap;
+    private PriorityQueue<Candidate> heap;
     /**
-     * a set to store all the downloaded(logically) docID in current turn's set covering
+     * the data of next turn's set covering built in background, null if there is no prefetching
      */
-    private Set<Integer> s;
+    private Future<PreparedMatrix> prefetched;
+    private ExecutorService prefetchService;
+    /**
+     * the result of isUpdate() decided when prefetching, null if it hasn't been decided
+     */
+    private Boolean decidedUpdate;
+    /**
+     * the current index provided by the implementation class
+     */
+    private final MatrixSource currentIndex = new MatrixSource() {
+        @Override
+        public TermDocMatrix getDocSetMap(String field, double low, double up) {
+            return SetCoverAlgorithm.this.getDocSetMap(field, low, up);
+        }
+
+        @Override
+        public DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+            return SetCoverAlgorithm.this.getDFHistogram(field, excludedTerms);
+        }
+
+        @Override
+        public TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+            return SetCoverAlgorithm.this.spillDocSetMap(field, low, up, dir);
+        }
+
+        @Override
+        public int getDocSize() {
+            return SetCoverAlgorithm.this.getDocSize();
+        }
+
+        @Override
+        public void close() { }
+    };
 
     public SetCoverAlgorithm(Builder builder) {
         super(builder);
@@ -68,12 +209,23 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
         lowBound = builder.lowBound;
         threshold = builder.threshold;
         sendingCost = builder.sendingCost;
+        costModel = builder.costModel;
+        fixedCost = sendingCost;
+        costPerDF = 1;
+        capDF = Double.POSITIVE_INFINITY;
+        lastQueryDF = -1;
+        spillPath = builder.spillPath;
+        pairBudget = builder.pairBudget;
+        conjunctionSyntax = parseConjunctionSyntax(builder.conjunctionSyntax);
         buildTableCost = 0;
         snapshotSize = 0;
         termList = new ArrayList<>();
-        df = new HashMap<>();
-        newMap = new HashMap<>();
-        s = new HashSet<>();
+        matrix = new TermDocMatrix();
+        postings = new DocIdBitmap[0];
+        df = new int[0];
+        newV = new int[0];
+        s = new FixedBitSet(0);
+        heap = new PriorityQueue<>();
     }
 
     /**
@@ -110,12 +262,15 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
 
     /**
      * internal use method getDocSetMap(String mainField, double low, double up)
-     * try the best to make sure the return map's size is not zero
-     * @param mainField
+     * try the best to make sure the return matrix has candidate terms which haven't been selected,
+     * the bound range is decided by the DF histogram, so the postings are only extracted for the final range
+     * @param source the index to extract matrix
+     * @param selected the selected queries
      * @return
      */
-    private Map<String, Set<Integer>> getDocSetMap(String mainField) {
-        Map<String, Set<Integer>> innerMap = null;
+    private TermDocMatrix getDocSetMap(MatrixSource source, List<String> selected) {
+        DFHistogram histogram = source.getDFHistogram(mainField, selected);
+        logger.info("the DF histogram of candidate terms is {}", histogram);
         double low = lowBound, up = upBound;
         int loop = 10;
         while (loop > 0) {
@@ -125,33 +280,297 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
             if (up >= 1) {
                 up = 1;
             }
-            innerMap = getDocSetMap(mainField, low, up);
-            logger.info("the initial size of newMap is {}, the selected query size is {}", innerMap.size(), getqList().size());
-            //remove the selected query in the candidate terms
-            if(getqList().size() != 0) {
-                for(String query : getqList()) {
-                    if(innerMap.containsKey(query)) {
-                        innerMap.remove(query);
-                    }
-                }
-            }
-            logger.info("the size of newMap after removing the selected query is {}", innerMap.size());
+            long candidateSize = histogram.count(low, up);
+            logger.info("the size of newMap between {} and {} after removing the selected query is {}", low, up, candidateSize);
             loop--;
             if (low == 0 && up == 1) {//if the upBound and lowBound touch the minimum and maximum value, directly return
                 break;
             }
-            if (innerMap.size() == 0) {
+            if (candidateSize == 0) {
                 low -= 0.01;
                 up += 0.1;
             } else {//if the size is not 0, directly return
                 break;
             }
         }
+        TermDocMatrix innerMap;
+        if (spillPath == null) {
+            innerMap = source.getDocSetMap(mainField, low, up);
+        } else {
+            try {
+                innerMap = source.spillDocSetMap(mainField, low, up, spillPath);
+            } catch (IOException ex) {
+                logger.error("IOException happen when spill doc set map", ex);
+                innerMap = new TermDocMatrix();
+            }
+        }
+        logger.info("the initial size of newMap is {}, the selected query size is {}", innerMap.size(), selected.size());
         return innerMap;
     }
 
     /**
-     * build the set covering matrix at the beginning of each turn's set covering
+     * look up the term IDs of the selected queries in the term dictionary
+     * @param innerMap
+     * @param selected
+     * @return
+     */
+    private int[] getSelectedTermIDs(TermDocMatrix innerMap, List<String> selected) {
+        int[] termIDs = new int[selected.size()];
+        int num = 0;
+        for (String query : selected) {
+            int termID = innerMap.find(new BytesRef(query));
+            if (termID >= 0) {
+                termIDs[num++] = termID;
+            }
+        }
+        return Arrays.copyOf(termIDs, num);
+    }
+
+    /**
+     * prepare all the data of a new turn's set covering from the specified index,
+     * this method doesn't touch the current turn's data, so it can run in background
+     * @param source
+     * @param selected the selected queries, which would be removed from the candidate terms
+     * @return
+     */
+    private PreparedMatrix prepareMatrix(MatrixSource source, List<String> selected) {
+        PreparedMatrix prepared = new PreparedMatrix();
+        prepared.selectedSize = selected.size();
+        prepared.docSize = source.getDocSize();
+        prepared.matrix = getDocSetMap(source, selected);//store each term's docID set in set covering, indexed by term ID
+        if (prepared.matrix.isSpilled()) {
+            return prepareSpilledMatrix(prepared, selected);
+        }
+        int termSize = prepared.matrix.size();
+        DocIdBitmap[] postings = new DocIdBitmap[termSize];
+        int[] df = new int[termSize];
+        for (int i = 0; i < termSize; i++) {
+            postings[i] = prepared.matrix.getPostings(i);
+        }
+        //remove the selected query in the candidate terms
+        for (int termID : getSelectedTermIDs(prepared.matrix, selected)) {
+            postings[termID] = DocIdBitmap.empty();
+        }
+        int length = 0;
+        for (int i = 0; i < termSize; i++) {
+            df[i] = postings[i].cardinality();//store each term's initial document frequency
+            length = Math.max(length, postings[i].length());
+        }
+        prepared.postings = postings;
+        prepared.df = df;
+        prepared.length = length;
+        addConjunctions(prepared, selected);
+
+        long postingSize = 0;
+        int candidateSize = 0;
+        for (int i = 0; i < prepared.df.length; i++) {
+            postingSize += prepared.df[i];
+            if (prepared.df[i] > 0) candidateSize++;
+        }
+        logger.info("the number of candidate terms after building matrix is {}", candidateSize);
+        buildAdjacency(prepared, postingSize);
+        return prepared;
+    }
+
+    /**
+     * add the conjunctive queries of the terms whose DF is bigger than the result cap into the prepared matrix,
+     * so the documents beyond the cap can be reached by a query whose result is under the cap,
+     * for each capped term, the partner terms are tried in the order of DF descending,
+     * the biggest intersection under the cap is chosen, if there is no such one,
+     * the smallest intersection above the cap is refined by a third term in the same way
+     * the conjunctive queries are appended after the single terms,
+     * the intersections of different capped terms are computed in parallel,
+     * at most pairBudget intersections are computed in a turn,
+     * then each conjunctive query is written in the site's syntax and sent to the probe one by one in the order of DF descending,
+     * it's added only if the site really hits something and its total page number is under the result cap,
+     * at most MAX_PROBE_NUM queries are probed in a turn, the following ones aren't added
+     * @param prepared the prepared matrix, whose postings, DF and length have been set
+     * @param selected the selected queries
+     */
+    private void addConjunctions(PreparedMatrix prepared, List<String> selected) {
+        ToIntFunction<String> probe = pageNumProbe;
+        if (pairBudget <= 0 || conjunctionSyntax == null || probe == null || !costModel.isReady()) {
+            return;
+        }
+        double cap = costModel.getCapDF();
+        int capPageNum = costModel.getCapPageNum();
+        if (Double.isInfinite(cap)) {
+            return;
+        }
+        int[] df = prepared.df;
+        Integer[] partners = new Integer[df.length];
+        int partnerNum = 0;
+        for (int i = 0; i < df.length; i++) {
+            if (df[i] > 0) partners[partnerNum++] = i;
+        }
+        Arrays.sort(partners, 0, partnerNum, (a, b) -> df[a] != df[b] ? Integer.compare(df[b], df[a]) : Integer.compare(a, b));
+        int[] order = new int[partnerNum];
+        int seedNum = 0;
+        for (int i = 0; i < partnerNum; i++) {
+            order[i] = partners[i];
+            if (df[order[i]] > cap) seedNum++;
+        }
+        if (seedNum == 0) {
+            return;
+        }
+        //the capped terms come first in the DF descending order
+        seedNum = Math.min(seedNum, Math.max(1, pairBudget / MIN_PARTNER_NUM));
+        int perSeed = pairBudget / seedNum;
+        int minDF = (int) (lowBound * prepared.docSize);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int[][] conjunctions = new int[seedNum][];
+        DocIdBitmap[] conjunctionPostings = new DocIdBitmap[seedNum];
+        IntStream.range(0, seedNum).parallel().forEach(i -> {
+            int seed = order[i];
+            FixedBitSet bits = new FixedBitSet(prepared.length);
+            prepared.postings[seed].orInto(bits);
+            int budget = perSeed;
+            int[] terms = {seed};
+            //at most three terms in a conjunctive query
+            while (terms.length < 3) {
+                int best = -1, bestSize = 0, smallest = -1, smallestSize = Integer.MAX_VALUE;
+                for (int partner : order) {
+                    if (budget <= 0) break;
+                    if (contains(terms, partner)) continue;
+                    budget--;
+                    int size = df[partner] - prepared.postings[partner].andNotCardinality(bits);
+                    if (size <= minDF) continue;
+                    if (size <= cap && size > bestSize) {
+                        best = partner;
+                        bestSize = size;
+                    } else if (size > cap && size < smallestSize) {
+                        smallest = partner;
+                        smallestSize = size;
+                    }
+                }
+                int next = best >= 0 ? best : smallest;
+                if (next < 0) break;
+                terms = Arrays.copyOf(terms, terms.length + 1);
+                terms[terms.length - 1] = next;
+                DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+                FixedBitSet intersection = new FixedBitSet(prepared.length);
+                prepared.postings[next].forEach(doc -> {
+                    if (bits.get(doc)) {
+                        builder.add(doc);
+                        intersection.set(doc);
+                    }
+                });
+                bits.clear(0, bits.length());
+                bits.or(intersection);
+                if (best >= 0) {
+                    conjunctions[i] = terms;
+                    conjunctionPostings[i] = builder.build();
+                    break;
+                }
+            }
+        });
+
+        //the probes are sent in the current thread, they are network calls which shouldn't occupy the common pool
+        Set<String> selectedSet = new HashSet<>(selected);
+        int added = 0, probeNum = 0, rejectedNum = 0;
+        for (int i = 0; i < seedNum && probeNum < MAX_PROBE_NUM; i++) {
+            if (conjunctions[i] == null) continue;
+            String query = formatConjunction(prepared.matrix, conjunctions[i]);
+            if (selectedSet.contains(query) || prepared.matrix.find(new BytesRef(query)) >= 0) {
+                continue;
+            }
+            //the local intersection only counts the downloaded documents, the site may ignore the syntax or still hit too many
+            probeNum++;
+            int pageNum = probe.applyAsInt(query);
+            if (pageNum <= 0 || pageNum >= capPageNum) {
+                logger.trace("reject the conjunctive query {} whose page number is {}", query, pageNum);
+                rejectedNum++;
+                continue;
+            }
+            int termSize = prepared.matrix.size();
+            prepared.matrix.addTerm(new BytesRef(query));
+            prepared.matrix.setPostings(termSize, conjunctionPostings[i]);
+            prepared.postings = Arrays.copyOf(prepared.postings, termSize + 1);
+            prepared.postings[termSize] = conjunctionPostings[i];
+            prepared.df = Arrays.copyOf(prepared.df, termSize + 1);
+            prepared.df[termSize] = conjunctionPostings[i].cardinality();
+            added++;
+        }
+        logger.info("add {} conjunctive queries for {} capped terms in {} ms, {} are rejected by the site", added, seedNum, stopwatch.elapsed(TimeUnit.MILLISECONDS), rejectedNum);
+    }
+
+    /**
+     * write the terms as a conjunctive query in the site's syntax
+     * @param matrix
+     * @param terms the term IDs
+     * @return
+     */
+    private String formatConjunction(TermDocMatrix matrix, int[] terms) {
+        StringJoiner joiner = new StringJoiner(conjunctionSyntax[1], conjunctionSyntax[0], conjunctionSyntax[2]);
+        for (int termID : terms) {
+            joiner.add(matrix.getTermString(termID));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * split the conjunction syntax by its two term placeholders
+     * @param syntax such as "+%s +%s" or "%s AND %s"
+     * @return the prefix, separator and suffix, null if the syntax is blank
+     */
+    private static String[] parseConjunctionSyntax(String syntax) {
+        if (syntax == null || syntax.trim().isEmpty()) {
+            return null;
+        }
+        int first = syntax.indexOf(TERM_PLACEHOLDER);
+        int second = first < 0 ? -1 : syntax.indexOf(TERM_PLACEHOLDER, first + TERM_PLACEHOLDER.length());
+        if (second < 0 || syntax.indexOf(TERM_PLACEHOLDER, second + TERM_PLACEHOLDER.length()) >= 0) {
+            throw new IllegalArgumentException("the conjunction syntax must contain two " + TERM_PLACEHOLDER + ", but it's " + syntax);
+        }
+        return new String[]{syntax.substring(0, first), syntax.substring(first + TERM_PLACEHOLDER.length(), second),
+                syntax.substring(second + TERM_PLACEHOLDER.length())};
+    }
+
+    /**
+     * set the probe to confirm the total page number of a query on the target site,
+     * the conjunctive queries are verified by it before being added into the matrix
+     * @param pageNumProbe
+     */
+    public void setPageNumProbe(ToIntFunction<String> pageNumProbe) {
+        this.pageNumProbe = pageNumProbe;
+    }
+
+    private static boolean contains(int[] terms, int termID) {
+        for (int t : terms) {
+            if (t == termID) return true;
+        }
+        return false;
+    }
+
+    /**
+     * prepare the data of out-of-core mode, only the DF of each term is loaded into heap,
+     * the docID sets are read from the spilled file when they are evaluated
+     * @param prepared
+     * @param selected
+     * @return
+     */
+    private PreparedMatrix prepareSpilledMatrix(PreparedMatrix prepared, List<String> selected) {
+        SpilledPostings spilled = prepared.matrix.getSpilledPostings();
+        int[] df = new int[spilled.size()];
+        int candidateSize = 0;
+        for (int i = 0; i < df.length; i++) {
+            df[i] = spilled.cardinality(i);
+            if (df[i] > 0) candidateSize++;
+        }
+        //remove the selected query in the candidate terms
+        for (int termID : getSelectedTermIDs(prepared.matrix, selected)) {
+            if (df[termID] > 0) candidateSize--;
+            df[termID] = 0;
+        }
+        logger.info("the number of candidate terms after spilling matrix is {}", candidateSize);
+        prepared.df = df;
+        prepared.length = spilled.length();
+        return prepared;
+    }
+
+    /**
+     * build the set covering matrix at the beginning of each turn's set covering,
+     * if the matrix has been built in background, use it directly
      */
     private void buildMatrix() {
         //start to build matrix
@@ -160,20 +579,214 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
 
         termList.clear();
         Stopwatch stopwatch = Stopwatch.createStarted();//use to record the time cost in building matrix
-        s.clear();
-        df.clear();
-        newMap.clear();
+        heap.clear();
+
+        PreparedMatrix prepared = takePrefetched();
+        if (prepared == null) {
+            prepared = prepareMatrix(currentIndex, getqList());
+        }
+        //swap in the new turn's data
+        closeSpilled(matrix);
+        matrix = prepared.matrix;
+        postings = prepared.postings;
+        df = prepared.df;
+        newV = Arrays.copyOf(df, df.length);
+        docStart = prepared.docStart;
+        docTerms = prepared.docTerms;
+        if (matrix.isSpilled()) {
+            s = null;
+            covered = new OffHeapBitSet(prepared.length);
+        } else {
+            s = new FixedBitSet(prepared.length);
+            covered = null;
+        }
+        sSize = 0;
 
-        newMap = getDocSetMap(mainField);//store each term's new docID set in set covering
-        logger.info("the number of candidate terms after building matrix is {}", newMap.size());
+        //rank the terms by expected new documents per second when the cost model is ready,
+        //otherwise fall back to the constant sending cost in the unit of document
+        if (costModel.isReady()) {
+            fixedCost = Math.max(costModel.getFixedCost(), MIN_COST);
+            costPerDF = costModel.getCostPerDF();
+            capDF = costModel.getCapDF();
+            logger.info("the cost of a query is {} + DF * {} seconds, the result cap is DF {}", fixedCost, costPerDF, capDF);
+        } else {
+            fixedCost = sendingCost;
+            costPerDF = 1;
+            capDF = Double.POSITIVE_INFINITY;
+        }
 
-        newMap.entrySet().forEach(entry -> df.put(entry.getKey(), entry.getValue().size()));//store each term's initial document frequency
+        //at the beginning, each term's new is equal to its DF, so every entry in the heap is fresh
+        for (int i = 0; i < df.length; i++) {
+            if (df[i] > 0) {
+                heap.offer(new Candidate(i, df[i]));
+            }
+        }
 
         buildTableCost = stopwatch.elapsed(TimeUnit.MILLISECONDS);
-        snapshotSize = getDocSize();
+        snapshotSize = prepared.docSize;
 
         Utils.logMemorySize();
         logger.info("build matrix finish");
+        onNewTurn();
+    }
+
+    /**
+     * get the matrix built in background, wait for it if it's still building,
+     * return null if there is no usable one, such as the selected queries have changed after taking the snapshot,
+     * or some documents have been added into the current index after taking the snapshot,
+     * because the prefetched matrix doesn't contain them, their terms would be missed by this turn of set covering,
+     * it seldom happens since the scheduler prefetches after all the documents of a round have been indexed
+     * @return
+     */
+    private PreparedMatrix takePrefetched() {
+        if (prefetched == null) {
+            return null;
+        }
+        Future<PreparedMatrix> future = prefetched;
+        prefetched = null;
+        try {
+            PreparedMatrix prepared = future.get();
+            if (prepared.selectedSize != getqList().size()) {
+                logger.info("the selected queries have changed after prefetching, discard the prefetched matrix");
+                closeSpilled(prepared.matrix);
+                return null;
+            }
+            int docSize = currentIndex.getDocSize();
+            if (prepared.docSize != docSize) {
+                logger.info("the index has {} documents but the prefetched matrix is built on {} documents, discard the prefetched matrix", docSize, prepared.docSize);
+                closeSpilled(prepared.matrix);
+                return null;
+            }
+            logger.info("use the matrix built in background");
+            return prepared;
+        } catch (InterruptedException | ExecutionException ex) {
+            logger.error("error happen when build matrix in background", ex);
+            return null;
+        }
+    }
+
+    /**
+     * delete the spilled file of the specified matrix if it has
+     * @param target
+     */
+    private void closeSpilled(TermDocMatrix target) {
+        if (target != null && target.isSpilled()) {
+            try {
+                target.getSpilledPostings().close();
+            } catch (IOException ex) {
+                logger.error("IOException happen when close spilled postings", ex);
+            }
+        }
+    }
+
+    /**
+     * build the doc-to-terms adjacency from each term's docID set
+     * @param prepared the prepared matrix, whose postings and length have been set
+     * @param postingSize the total number of docID in all the docID sets
+     */
+    private void buildAdjacency(PreparedMatrix prepared, long postingSize) {
+        if (postingSize > ArrayUtil.MAX_ARRAY_LENGTH) {
+            logger.warn("the posting size {} is too big to build doc-to-terms adjacency, compute new value by docID set", postingSize);
+            return;
+        }
+        DocIdBitmap[] postings = prepared.postings;
+        int length = prepared.length;
+        //count the term number of each docID, then compute the start position by prefix sum
+        int[] start = new int[length + 1];
+        for (DocIdBitmap posting : postings) {
+            posting.forEach(doc -> start[doc + 1]++);
+        }
+        for (int d = 0; d < length; d++) {
+            start[d + 1] += start[d];
+        }
+        int[] adjacency = new int[(int) postingSize];
+        int[] fill = Arrays.copyOf(start, length);
+        for (int i = 0; i < postings.length; i++) {
+            int termID = i;
+            postings[i].forEach(doc -> adjacency[fill[doc]++] = termID);
+        }
+        prepared.docStart = start;
+        prepared.docTerms = adjacency;
+        logger.trace("build doc-to-terms adjacency finish, the adjacency size is {}", postingSize);
+    }
+
+    /**
+     * decide whether the next query starts a new turn of set covering, the decision is kept for the next generateQuery(),
+     * if it does, start to build the next turn's matrix on a snapshot of the index in background,
+     * the snapshot contains all the downloaded documents, so the matrix is still up to date when the next turn starts,
+     * if the last prefetching hasn't finished, do nothing
+     */
+    @Override
+    public final void prefetch() {
+        if (prefetched != null && !prefetched.isDone()) {
+            logger.trace("the last prefetching hasn't finished");
+            return;
+        }
+        if (decidedUpdate == null) {
+            decidedUpdate = isUpdate();
+        }
+        if (!decidedUpdate) {
+            logger.trace("current turn of set covering goes on, no need to prefetch");
+            return;
+        }
+        MatrixSource snapshot = openSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        if (prefetchService == null) {
+            prefetchService = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "matrix-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        //the older prefetched matrix is replaced by the one built on the newer snapshot
+        if (prefetched != null) {
+            try {
+                closeSpilled(prefetched.get().matrix);
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.error("error happen when build matrix in background", ex);
+            }
+        }
+        List<String> selected = new ArrayList<>(getqList());
+        logger.trace("start to build matrix in background");
+        prefetched = prefetchService.submit(() -> {
+            try {
+                return prepareMatrix(snapshot, selected);
+            } finally {
+                snapshot.close();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (prefetchService != null) {
+            prefetchService.shutdownNow();
+        }
+        closeSpilled(matrix);
+        super.close();
+    }
+
+    /**
+     * get the current new value of the specified term
+     * @param termID
+     * @return
+     */
+    private int getNew(int termID) {
+        if (docTerms != null) {
+            return newV[termID];
+        }
+        if (covered != null) {
+            //out-of-core mode, re-read the docID set of the term from the spilled file
+            try {
+                return matrix.getSpilledPostings().andNotCardinality(termID, covered);
+            } catch (IOException ex) {
+                logger.error("IOException happen when read spilled postings", ex);
+                return 0;
+            }
+        }
+        return postings[termID].andNotCardinality(s);
     }
 
     /**
@@ -191,71 +804,224 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
         if (v <= 0) {
             v = 1;
         }
-        if (s.size() < v) {//check whether satisfy the predefined threshold
+        if (sSize < v) {//check whether satisfy the predefined threshold
             Stopwatch stopwatch = Stopwatch.createStarted();//use to compute the cost in modifying matrix for current term
-            Set<String> candidate = new HashSet<>(); //use to store the terms whose new/cost is identical
-            String query = null; //the term would be generate in current round
-            double maxRate = 0.0; //the known biggest new/cost value
-            int maxDF = 0; //the known biggest DF value
-
-            //select the term from candidates, which has the biggest new/cost value
-            for(Map.Entry<String, Set<Integer>> entry : newMap.entrySet()) {
-                if(entry.getValue().size() != 0) { //filter out the term whose new has been decreased to 0
-                    double curRate = entry.getValue().size() / (double)(df.get(entry.getKey()) + sendingCost); //new/cost=new/(df+100)
-
-                    //if current term's new/cost bigger than the known biggest one，update the biggest value，and clear candidate
-                    if(curRate > maxRate){
-                        maxRate = curRate;
-                        candidate.clear();
-                    }
+            int query = -1; //the term ID would be generate in current round
 
-                    //if current term's new/cost is equal to biggest one, add it to candidate
-                    if(curRate >= maxRate){
-                        candidate.add(entry.getKey());
-                    }
+            //pop the term which has the biggest new/cost upper bound, when its new is still fresh,
+            //no other term can exceed it, otherwise put it back with the re-evaluated new
+            while (!heap.isEmpty()) {
+                Candidate top = heap.poll();
+                int curNew = getNew(top.termID);
+                if (curNew == 0) { //filter out the term whose new has been decreased to 0
+                    if (postings != null) postings[top.termID] = null;
+                    continue;
+                }
+                if (curNew == top.newV) {
+                    query = top.termID;
+                    logger.trace("the expected new documents per second of the query is {}", top.rate());
+                    break;
                 }
+                top.newV = curNew;
+                heap.offer(top);
             }
 
-            //when the size of candidates bigger than 1, choose the term whose document frequency is biggest
-            if(candidate.size() >= 1){
-                maxDF = 0;
-                for(String each : candidate){
-                    if(maxDF < df.get(each)){
-                        maxDF = df.get(each);
-                        query = each;
-                    }
-                }
-            }else { //when the size is 0, it means can't generate new term from current turn's set covering, return null
+            //when the heap is empty, it means can't generate new term from current turn's set covering, return null
+            if (query == -1) {
                 logger.warn("all terms's new in set covering is 0，go to next set covering");
                 return null;
             }
 
-            //remove the reference of query in df and newMap
-            Set<Integer> deleted = newMap.remove(query);
-            df.remove(query);
-            s.addAll(deleted);
-
-            //update new
-            for(Map.Entry<String,Set<Integer>> entry : newMap.entrySet()) {
-                entry.getValue().removeAll(deleted);
+            lastQueryDF = df[query];
+            //add the docID set of query into s, and update new value of the terms which contain the newly covered docID
+            if (covered != null) {
+                try {
+                    matrix.getSpilledPostings().forEach(query, doc -> {
+                        if (!covered.getAndSet(doc)) {
+                            sSize++;
+                        }
+                    });
+                } catch (IOException ex) {
+                    logger.error("IOException happen when read spilled postings", ex);
+                }
+                modifyTableCost = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+                return matrix.getTermString(query);
+            }
+            DocIdBitmap deleted = postings[query];
+            postings[query] = null;
+            if (docTerms != null) {
+                deleted.forEach(doc -> {
+                    if (!s.getAndSet(doc)) {
+                        sSize++;
+                        for (int k = docStart[doc]; k < docStart[doc + 1]; k++) {
+                            newV[docTerms[k]]--;
+                        }
+                    }
+                });
+            } else {
+                sSize += deleted.andNotCardinality(s);
+                deleted.orInto(s);
             }
 
             modifyTableCost = stopwatch.elapsed(TimeUnit.MILLISECONDS);
-            return query;
+            return matrix.getTermString(query);
         }
         return null;
     }
 
+    /**
+     * the entry of lazy-greedy heap
+     * the order is new/cost descending, and when new/cost is identical, choose the term whose document frequency is biggest
+     */
+    private class Candidate implements Comparable<Candidate> {
+        private final int termID;
+        /**
+         * the new value at the last evaluation, it's the upper bound of current new value
+         */
+        private int newV;
+        Candidate(int termID, int newV) {
+            this.termID = termID;
+            this.newV = newV;
+        }
+        double rate() {
+            int d = df[termID];
+            if (d <= capDF) {
+                return newV / (fixedCost + d * costPerDF); //new/cost=new/(fixedCost+df*costPerDF)
+            }
+            //only capDF of the documents can be returned, assume the new documents are spread evenly in the result list
+            return newV * (capDF / d) / (fixedCost + capDF * costPerDF);
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int c = Double.compare(o.rate(), rate());
+            if (c != 0) return c;
+            c = Integer.compare(df[o.termID], df[termID]);
+            if (c != 0) return c;
+            return Integer.compare(termID, o.termID);//make the choice stable when both new/cost and DF are identical
+        }
+    }
+
+    /**
+     * all the data of a turn's set covering which can be built without the current turn
+     */
+    private static class PreparedMatrix {
+        private TermDocMatrix matrix;
+        private DocIdBitmap[] postings;
+        private int[] df;
+        private int[] docStart;
+        private int[] docTerms;
+        /**
+         * the size of docID space
+         */
+        private int length;
+        /**
+         * the document number of the index when preparing, the documents are never deleted,
+         * so it works as the version of the index
+         */
+        private int docSize;
+        /**
+         * the number of selected queries when preparing
+         */
+        private int selectedSize;
+    }
+
+    /**
+     * the index which the matrix is extracted from
+     */
+    protected interface MatrixSource {
+        TermDocMatrix getDocSetMap(String field, double low, double up);
+        TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException;
+        DFHistogram getDFHistogram(String field, Collection<String> excludedTerms);
+        int getDocSize();
+
+        /**
+         * release the index, such as a snapshot
+         */
+        void close();
+    }
+
     /*
     在当前实现层次实现父类的抽象函数，同时进行更细致的抽象，留给子类实现
      */
     @Override
     protected final String generateQuery() {
-        boolean isUpdate = isUpdate();
+        lastQueryDF = -1;
+        queryDFs.clear();
+        boolean isUpdate = decidedUpdate != null ? decidedUpdate : isUpdate();
+        decidedUpdate = null;
+        String spec = speculated;
+        speculated = null;
+        if (spec != null) {
+            //the greedy pick only depends on the matrix, so the speculation is right as long as the turn doesn't change
+            if (!isUpdate) {
+                logger.info("commit the speculated query {}", spec);
+                termList.add(spec);
+                modifyTableCost = speculatedCost;
+                lastQueryDF = speculatedDF;
+                return keepDF(spec);
+            }
+            logger.info("discard the speculated query {} because a new turn of set covering starts", spec);
+        }
         if (isUpdate) {
             update();
         }
-        return getNextTerm(isUpdate);
+        return keepDF(getNextTerm(isUpdate));
+    }
+
+    /**
+     * keep the initial DF of the latest pick for the measured cost of the query
+     * @param query the latest pick
+     * @return the query itself
+     */
+    private String keepDF(String query) {
+        if (query != null && lastQueryDF > 0) {
+            queryDFs.put(query, lastQueryDF);
+        }
+        return query;
+    }
+
+    /**
+     * infer the next greedy pick of current turn's set covering while the latest query is downloading,
+     * it would be committed in the next inference only when isUpdate() decides to keep current turn,
+     * the cost and DF of the latest query are kept for the feedback of the latest query
+     */
+    @Override
+    public final void speculate() {
+        if (speculated != null || termList.isEmpty()) {
+            return;
+        }
+        long cost = modifyTableCost;
+        int queryDF = lastQueryDF;
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        speculated = generateTerm();
+        speculatedCost = modifyTableCost;
+        speculatedDF = lastQueryDF;
+        modifyTableCost = cost;
+        lastQueryDF = queryDF;
+        logger.info("speculate the next query {} in {} ms", speculated, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * the next greedy pick of current turn's set covering, the turn wouldn't be updated in a batch
+     * @return null if current turn's set covering can't generate term more
+     */
+    @Override
+    protected final String generateFollowingQuery() {
+        String newTerm = termList.isEmpty() ? null : generateTerm();
+        if (newTerm != null) {
+            termList.add(newTerm);
+        }
+        return keepDF(newTerm);
+    }
+
+    /**
+     * learn the cost of a query in the latest batch
+     */
+    @Override
+    public void measure(String query, int pageNum, int linkNum, long probeMillis, long downloadMillis) {
+        Integer queryDF = queryDFs.get(query);
+        costModel.record(queryDF == null ? -1 : queryDF, pageNum, linkNum, probeMillis, downloadMillis);
     }
 
     /**
@@ -300,26 +1066,68 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
      */
     protected abstract void update();
 
+    /**
+     * invoked after the matrix of a new turn's set covering has been built,
+     * either the turn is decided by isUpdate() or current turn can't generate term more,
+     * the implementation class can override it to reset its per-turn state
+     */
+    protected void onNewTurn() { }
+
     /**
      * get the specified field's candidate terms with corresponding docID set
+     * the term ID should follow the order of term, it's used to make the choice stable
      * @param field
      * @param low
      * @param up
      * @return
      */
-    protected abstract Map<String, Set<Integer>> getDocSetMap(String field,double low,double up);
+    protected abstract TermDocMatrix getDocSetMap(String field,double low,double up);
+
+    /**
+     * get the specified field's document frequency histogram, the excluded terms shouldn't be counted
+     * @param field
+     * @param excludedTerms
+     * @return
+     */
+    protected abstract DFHistogram getDFHistogram(String field, Collection<String> excludedTerms);
 
     /**
      * get current index's document size
      * @return
      */
     protected abstract int getDocSize();
+
+    /**
+     * get the specified field's candidate terms with corresponding docID set spilled into the specified directory,
+     * it's used in out-of-core mode, the implementation class should override it to avoid building the docID sets in heap
+     * @param field
+     * @param low
+     * @param up
+     * @param dir
+     * @return
+     */
+    protected TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+        return getDocSetMap(field, low, up).spill(dir);
+    }
+
+    /**
+     * open a point-in-time snapshot of the underline index for building the next turn's matrix in background,
+     * the implementation class can override this method, return null if not support
+     * @return
+     */
+    protected MatrixSource openSnapshot() {
+        return null;
+    }
     public static class Builder extends AlgorithmBase.Builder {
         private String mainField = Constant.FT_INDEX_FIELD;//the default lucene index's main field
         private double upBound = 0.15;//set covering algorithm's up bound
         private double lowBound = 0.02;
         private double threshold = 0.99;
         private int sendingCost = 100;
+        private CostModel costModel = new CostModel();
+        private Path spillPath = null;
+        private int pairBudget = 0;
+        private String conjunctionSyntax = null;
         public Builder setLowBound(double lowBound) {
             this.lowBound = lowBound;
             return this;
@@ -345,5 +1153,47 @@ public abstract class SetCoverAlgorithm extends AlgorithmBase {
             return this;
         }
 
+        /**
+         * set the cost model to rank the terms by expected new documents per second
+         * @param costModel
+         * @return
+         */
+        public Builder setCostModel(CostModel costModel) {
+            this.costModel = costModel;
+            return this;
+        }
+
+        /**
+         * build conjunctive queries for the terms whose DF is bigger than the result cap,
+         * at most pairBudget posting intersections are computed in a turn, 0 to disable
+         * @param pairBudget
+         * @return
+         */
+        public Builder setPairBudget(int pairBudget) {
+            this.pairBudget = pairBudget;
+            return this;
+        }
+
+        /**
+         * set the syntax of a conjunctive query on the target site, "%s" is the placeholder of a term,
+         * such as "+%s +%s" or "%s AND %s", the conjunctive queries aren't built if it's blank
+         * @param conjunctionSyntax
+         * @return
+         */
+        public Builder setConjunctionSyntax(String conjunctionSyntax) {
+            this.conjunctionSyntax = conjunctionSyntax;
+            return this;
+        }
+
+        /**
+         * run set covering in out-of-core mode, the docID sets would be spilled into the specified directory
+         * @param spillPath
+         * @return
+         */
+        public Builder setSpillPath(Path spillPath) {
+            this.spillPath = spillPath;
+            return this;
+        }
+
     }
 }
@@ -1,6 +1,7 @@
 package com.cufe.deepweb.common.dedu;
 
 import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //用于去重
 public abstract class Deduplicator<T> implements Closeable {
@@ -19,6 +20,30 @@ public abstract class Deduplicator<T> implements Closeable {
      * @return true if o can be added into the deduplicator, or false if o has been in the deduplicator
      */
     public abstract boolean add(T o);
+
+    /**
+     * add o and count it in the specified tally too, so the counters of a query are kept apart from the other queries in flight
+     * @param o
+     * @param tally can be null
+     * @return true if o can be added into the deduplicator, or false if o has been in the deduplicator
+     */
+    public final boolean add(T o, Tally tally) {
+        boolean added = add(o);
+        if (tally != null) {
+            tally.costV.incrementAndGet();
+            if (added) {
+                tally.newV.incrementAndGet();
+            }
+        }
+        return added;
+    }
+
+    /**
+     * judge whether o has been in the deduplicator, this method doesn't add o and doesn't change newV and costV
+     * @param o
+     * @return
+     */
+    public abstract boolean contains(T o);
     /**
      * 当前元素数量
      * @return
@@ -48,4 +73,19 @@ public abstract class Deduplicator<T> implements Closeable {
         return tmp;
     }
 
+    /**
+     * the new value and cost value of a query, this class is thread-safe
+     */
+    public static final class Tally {
+        private final AtomicInteger newV = new AtomicInteger(0);
+        private final AtomicInteger costV = new AtomicInteger(0);
+
+        public int getNew() {
+            return newV.get();
+        }
+
+        public int getCost() {
+            return costV.get();
+        }
+    }
 }
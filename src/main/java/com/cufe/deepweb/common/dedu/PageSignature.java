@@ -0,0 +1,147 @@
+package com.cufe.deepweb.common.dedu;
+
+import java.util.Arrays;
+
+/**
+ * the MinHash signature of the word shingles in a page, used to judge whether two pages are near-duplicate cheaply
+ * the text is split into tokens without NLP: a run of letters or digits is a token, and each ideograph is a token by itself,
+ * then every SHINGLE_SIZE adjacent tokens form a shingle, the similarity of two signatures estimates the Jaccard similarity of their shingle sets
+ * this class is immutable
+ */
+public final class PageSignature {
+    private static final int SHINGLE_SIZE = 3;
+    private static final int HASH_NUM = 64;
+    /**
+     * two pages are near-duplicate only if their similarity is bigger than this value,
+     * with 64 hash functions it needs at least 61 equal min hashes,
+     * a lower value may regard two result pages sharing most of the page template as the same
+     */
+    public static final double SIMILAR_THRESHOLD = 0.95;
+    /**
+     * the seeds of the hash functions, generated by a fixed sequence so the signatures of different pages are comparable
+     */
+    private static final long[] SEEDS = new long[HASH_NUM];
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < HASH_NUM; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /**
+     * the minimal hash value of the shingles under each hash function, null if the text has no token
+     */
+    private final long[] minHashes;
+
+    private PageSignature(long[] minHashes) {
+        this.minHashes = minHashes;
+    }
+
+    /**
+     * compute the signature of the text
+     * @param text
+     * @return
+     */
+    public static PageSignature of(String text) {
+        long[] tokens = tokenize(text);
+        if (tokens.length == 0) {
+            return new PageSignature(null);
+        }
+        long[] minHashes = new long[HASH_NUM];
+        Arrays.fill(minHashes, Long.MAX_VALUE);
+        //the text shorter than a shingle is regarded as a single shingle
+        int shingleNum = Math.max(tokens.length - SHINGLE_SIZE + 1, 1);
+        for (int s = 0; s < shingleNum; s++) {
+            long shingle = 0;
+            for (int t = s; t < Math.min(s + SHINGLE_SIZE, tokens.length); t++) {
+                shingle = mix(shingle * 31 + tokens[t]);
+            }
+            for (int i = 0; i < HASH_NUM; i++) {
+                long h = mix(shingle ^ SEEDS[i]);
+                if (h < minHashes[i]) {
+                    minHashes[i] = h;
+                }
+            }
+        }
+        return new PageSignature(minHashes);
+    }
+
+    /**
+     * the estimated Jaccard similarity of the shingle sets, two empty texts are regarded as the same
+     * @param o
+     * @return between 0 and 1
+     */
+    public double similarity(PageSignature o) {
+        if (minHashes == null || o.minHashes == null) {
+            return minHashes == o.minHashes ? 1 : 0;
+        }
+        int same = 0;
+        for (int i = 0; i < HASH_NUM; i++) {
+            if (minHashes[i] == o.minHashes[i]) {
+                same++;
+            }
+        }
+        return same / (double) HASH_NUM;
+    }
+
+    /**
+     * whether the two pages are near-duplicate
+     * @param o
+     * @return
+     */
+    public boolean isSimilar(PageSignature o) {
+        return similarity(o) > SIMILAR_THRESHOLD;
+    }
+
+    /**
+     * split the text into tokens and hash each token
+     * @param text
+     * @return
+     */
+    private static long[] tokenize(String text) {
+        long[] tokens = new long[16];
+        int num = 0;
+        long token = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            boolean ideograph = Character.isIdeographic(c);
+            if (!ideograph && Character.isLetterOrDigit(c)) {
+                token = token * 31 + Character.toLowerCase(c);
+                inToken = true;
+                continue;
+            }
+            if (inToken) {
+                if (num == tokens.length) tokens = Arrays.copyOf(tokens, num * 2);
+                tokens[num++] = mix(token);
+                token = 0;
+                inToken = false;
+            }
+            if (ideograph) {
+                if (num == tokens.length) tokens = Arrays.copyOf(tokens, num * 2);
+                tokens[num++] = mix(c);
+            }
+        }
+        if (inToken) {
+            if (num == tokens.length) tokens = Arrays.copyOf(tokens, num * 2);
+            tokens[num++] = mix(token);
+        }
+        return Arrays.copyOf(tokens, num);
+    }
+
+    /**
+     * the finalizer of MurmurHash3, used to spread the bits
+     * @param h
+     * @return
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
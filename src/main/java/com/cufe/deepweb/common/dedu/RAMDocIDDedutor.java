@@ -25,6 +25,11 @@ public class RAMDocIDDedutor extends Deduplicator<Integer> {
        return false;
     }
 
+    @Override
+    public synchronized boolean contains(Integer o) {
+        return deduSet.contains(o);
+    }
+
 
     @Override
     public int getTotal() {
@@ -46,9 +46,8 @@ public class RAMMD5Dedutor extends RAMStrDedutor {
     }
 
     @Override
-    protected boolean dedu(String o) {
+    protected String key(String o) {
         byte[] osmd5 = md5.digest(o.getBytes());
-        String hexMd5 = Hex.encodeHexString(osmd5);
-        return deduSet.add(hexMd5);
+        return Hex.encodeHexString(osmd5);
     }
 }
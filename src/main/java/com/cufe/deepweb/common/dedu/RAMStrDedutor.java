@@ -16,7 +16,7 @@ public class RAMStrDedutor extends Deduplicator<String> {
 
 
     public RAMStrDedutor() {
-
+        deduSet = new HashSet<>();
     }
     /**
      * use data saving file
@@ -60,7 +60,21 @@ public class RAMStrDedutor extends Deduplicator<String> {
      * @return
      */
     protected boolean dedu(String o) {
-        return deduSet.add(o);
+        return deduSet.add(key(o));
+    }
+
+    @Override
+    public synchronized boolean contains(String o) {
+        return deduSet.contains(key(o));
+    }
+
+    /**
+     * the value kept in the dedu set for the specified element, the subclass can override this method to compress the element
+     * @param o
+     * @return
+     */
+    protected String key(String o) {
+        return o;
     }
 
     @Override
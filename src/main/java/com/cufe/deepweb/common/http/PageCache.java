@@ -0,0 +1,142 @@
+package com.cufe.deepweb.common.http;
+
+import com.cufe.deepweb.crawler.Constant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * the cache of the query page responses in current round, shared by the page number probing and the harvesting,
+ * the responses are compressed in memory, and the least recently used ones are evicted when the total size exceeds the capacity
+ * when the round changes, the cache is cleared and the hit rate of the last round is logged
+ * this class is thread-safe
+ */
+public final class PageCache {
+    private static final Logger logger = LoggerFactory.getLogger(PageCache.class);
+    /**
+     * the max total bytes of the compressed responses
+     */
+    private final long capacity;
+    private final LinkedHashMap<String, byte[]> entries;
+    private long size;
+    private long hitNum;
+    private long missNum;
+    /**
+     * the round which the cached responses belong to
+     */
+    private int round;
+
+    /**
+     * @param capacity the max total bytes of the compressed responses
+     */
+    public PageCache(long capacity) {
+        this.capacity = capacity;
+        entries = new LinkedHashMap<>(64, 0.75f, true);
+        size = 0;
+        hitNum = 0;
+        missNum = 0;
+        round = Constant.round;
+    }
+
+    /**
+     * get the cached response
+     * @param key the query link, prefixed by the kind of the response
+     * @return null if not cached
+     */
+    public String get(String key) {
+        byte[] compressed;
+        synchronized (this) {
+            checkRound();
+            compressed = entries.get(key);
+            if (compressed == null) {
+                missNum++;
+                return null;
+            }
+            hitNum++;
+        }
+        return decompress(compressed);
+    }
+
+    /**
+     * cache the response, the response bigger than the capacity isn't cached
+     * @param key
+     * @param value
+     */
+    public void put(String key, String value) {
+        if (value == null) return;
+        byte[] compressed = compress(value);
+        synchronized (this) {
+            checkRound();
+            if (compressed.length > capacity) return;
+            byte[] old = entries.put(key, compressed);
+            size += compressed.length - (old == null ? 0 : old.length);
+            Iterator<byte[]> it = entries.values().iterator();
+            while (size > capacity && it.hasNext()) {
+                size -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * the hit rate in current round
+     * @return
+     */
+    public synchronized double getHitRate() {
+        long total = hitNum + missNum;
+        return total == 0 ? 0 : hitNum / (double) total;
+    }
+
+    /**
+     * clear the cache if a new round starts
+     */
+    private void checkRound() {
+        if (round == Constant.round) return;
+        logger.info("page cache of round {}: {} hits, {} misses, hit rate {}, {} entries in {} bytes", round, hitNum, missNum, getHitRate(), entries.size(), size);
+        entries.clear();
+        size = 0;
+        hitNum = 0;
+        missNum = 0;
+        round = Constant.round;
+    }
+
+    private static byte[] compress(String value) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(value.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static String decompress(byte[] compressed) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && inflater.needsInput()) break;
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException ex) {
+            //the data is compressed by this class, so it can't happen
+            logger.error("error happen when decompress the cached page", ex);
+        } finally {
+            inflater.end();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
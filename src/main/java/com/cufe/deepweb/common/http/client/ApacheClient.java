@@ -1,5 +1,6 @@
 package com.cufe.deepweb.common.http.client;
 
+import com.cufe.deepweb.common.http.PageCache;
 import com.cufe.deepweb.common.http.client.resp.HtmlContent;
 import com.cufe.deepweb.common.http.client.resp.JsonContent;
 import com.cufe.deepweb.common.http.client.resp.RespContent;
@@ -137,6 +138,25 @@ public class ApacheClient implements CusHttpClient {
     }
     @Override
     public JsonContent getJSON(String URL) {
+        if (builder.pageCache == null) {
+            String json = loadJSON(URL);
+            return json == null ? null : RespContent.asJson(json);
+        }
+        String key = "json:" + URL;
+        String json = builder.pageCache.get(key);
+        if (json == null) {
+            json = loadJSON(URL);
+            builder.pageCache.put(key, json);
+        }
+        return json == null ? null : RespContent.asJson(json);
+    }
+
+    /**
+     * download the raw JSON string corresponding to the URL
+     * @param URL
+     * @return null if failed
+     */
+    private String loadJSON(String URL) {
         HttpGet httpGet = buildBaseHttpGet(URL);
         if (httpGet == null) return null;
         httpGet.addHeader("Accept", "application/json");
@@ -153,7 +173,7 @@ public class ApacheClient implements CusHttpClient {
                     charset = Charset.forName(Constant.extraConf.getCharset());
                 }
 
-                return RespContent.asJson(EntityUtils.toString(entity, charset));
+                return EntityUtils.toString(entity, charset);
             }
         } catch (IOException ex) {
             logger.error("error happen when get JSON content", ex);
@@ -248,6 +268,10 @@ public class ApacheClient implements CusHttpClient {
          * the cookieManager from browser
          */
         private CookieManager cookieManager;
+        /**
+         * the cache of the JSON query pages, null if not cache
+         */
+        private PageCache pageCache;
         /**
          * the max connection number
          * @param maxTotal
@@ -272,6 +296,10 @@ public class ApacheClient implements CusHttpClient {
             this.cookieManager = cookieManager;
             return this;
         }
+        public Builder setPageCache(PageCache pageCache) {
+            this.pageCache = pageCache;
+            return this;
+        }
         public Builder setTimeout(int timeout) {
             this.timeout = timeout;
             return this;
@@ -0,0 +1,84 @@
+package com.cufe.deepweb.common.http.simulate;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * the web connection of a web client which filters its requests:
+ * the requests to the blocked hosts get an empty response without being sent,
+ * and the requests of the static resources kept by the StaticResourceCache are sent with conditional headers, the kept content is reused when the server answers 304
+ */
+final class FilteringWebConnection extends WebConnectionWrapper {
+    private static final Logger logger = LoggerFactory.getLogger(FilteringWebConnection.class);
+    private final StaticResourceCache cache;
+    /**
+     * the blocked hosts, a host is blocked if it's one of them or a sub domain of one of them
+     */
+    private final Set<String> blockedHosts;
+
+    /**
+     * wrap the web connection of the client and install itself to the client
+     * @param client
+     * @param cache
+     * @param blockedHosts
+     */
+    FilteringWebConnection(WebClient client, StaticResourceCache cache, Set<String> blockedHosts) {
+        super(client);
+        this.cache = cache;
+        this.blockedHosts = blockedHosts == null ? Collections.emptySet() : blockedHosts;
+    }
+
+    @Override
+    public WebResponse getResponse(WebRequest request) throws IOException {
+        if (isBlocked(request.getUrl().getHost())) {
+            logger.trace("block the request to {}", request.getUrl());
+            return new WebResponse(new WebResponseData(new byte[0], 200, "OK", Collections.<NameValuePair>emptyList()), request, 0);
+        }
+        if (request.getHttpMethod() != HttpMethod.GET) {
+            return super.getResponse(request);
+        }
+        StaticResourceCache.Validated validated = cache.getValidated(request.getUrl());
+        if (validated != null) {
+            if (validated.eTag != null) {
+                request.setAdditionalHeader("If-None-Match", validated.eTag);
+            }
+            if (validated.lastModified != null) {
+                request.setAdditionalHeader("If-Modified-Since", validated.lastModified);
+            }
+        }
+        WebResponse response = super.getResponse(request);
+        if (validated != null && response.getStatusCode() == 304) {
+            return new WebResponse(validated.data, request, response.getLoadTime());
+        }
+        if (response.getStatusCode() == 200 && StaticResourceCache.isStatic(response)) {
+            try (InputStream in = response.getContentAsStream()) {
+                cache.putValidated(response, IOUtils.toByteArray(in));
+            }
+        }
+        return response;
+    }
+
+    private boolean isBlocked(String host) {
+        if (blockedHosts.isEmpty() || host == null) return false;
+        host = host.toLowerCase();
+        while (true) {
+            if (blockedHosts.contains(host)) return true;
+            int dot = host.indexOf('.');
+            if (dot < 0) return false;
+            host = host.substring(dot + 1);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.cufe.deepweb.common.http.simulate;
 
+import com.cufe.deepweb.common.http.PageCache;
 import com.cufe.deepweb.crawler.service.infos.info.Info;
 import com.cufe.deepweb.crawler.service.querys.query.ApiBasedQuery;
 import com.cufe.deepweb.crawler.service.querys.query.Query;
@@ -20,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * the Browser implemented by HtmlUnit
@@ -33,42 +35,225 @@ public final class HtmlUnitBrowser implements WebBrowser {
     private int timeout;
     private CookieManager cookieManager;
     private volatile boolean isLogin;
-    ThreadLocal<WebClient> threadClient = new ThreadLocal<WebClient>() {
-        @Override
-        protected WebClient initialValue() {
-            WebClient client = new WebClient(BrowserVersion.BEST_SUPPORTED);
-            client.setCookieManager(cookieManager);
-            client.getOptions().setCssEnabled(false);//headless browser no need to support css
-            client.getOptions().setDownloadImages(false);//headless browser no need to support download imgs
-            client.getOptions().setJavaScriptEnabled(true);
-            client.getOptions().setThrowExceptionOnFailingStatusCode(false);//wouldn't log when access error
-            client.getOptions().setThrowExceptionOnScriptError(false);//wouldn't log when js run error
-            client.getOptions().setTimeout(timeout);//set the timeout for browser to connect
-            client.getOptions().setDoNotTrackEnabled(true);
-            client.getOptions().setHistoryPageCacheLimit(1);//limit the cache number
-            client.getOptions().setHistorySizeLimit(1);
-            client.setAjaxController(new NicelyResynchronizingAjaxController());
-            client.setJavaScriptTimeout(timeout);
-            client.waitForBackgroundJavaScript(timeout);
-            return client;
-        }
-
+    /**
+     * the cache of the query pages, null if not cache
+     */
+    private PageCache pageCache;
+    /**
+     * the key prefixes of the cached parts of a query page: the text of its body, its info links and the content of a xpath
+     */
+    private static final String TEXT_PART = "text:";
+    private static final String LINKS_PART = "links:";
+    private static final String NODE_PART = "node:";
+    /**
+     * extract the info links of a query page without any private operation
+     */
+    private static final LinkCollector LINK_EXTRACTOR = new LinkCollector() {
         @Override
-        public void remove() {
-            get().close();
-            super.remove();
+        public List<Info> privateOp(List<Info> links) {
+            return links;
         }
     };
+    /**
+     * the max page number served by a web client before it's recycled
+     */
+    private static final int MAX_PAGE_NUM = 100;
+    /**
+     * the default max number of web clients
+     */
+    private static final int DEFAULT_POOL_SIZE = 16;
+    /**
+     * the pool of web clients shared by all the threads
+     */
+    private final WebClientPool pool;
+    /**
+     * the cache of the scripts and style sheets shared by the web clients of all the browsers in this process
+     */
+    private static final StaticResourceCache STATIC_CACHE = new StaticResourceCache();
+    /**
+     * the hosts whose requests are blocked, such as the third-party analytics irrelevant to the rendering of results
+     */
+    private final Set<String> blockedHosts;
     /**
      * initialize a new HtmlUnitBrowser
      */
     public HtmlUnitBrowser(CookieManager cookieManager, int timeout){
+        this(cookieManager, timeout, null, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * initialize a new HtmlUnitBrowser which caches the URL based query pages
+     * @param pageCache
+     * @param poolSize the max number of web clients used at the same time
+     */
+    public HtmlUnitBrowser(CookieManager cookieManager, int timeout, PageCache pageCache, int poolSize){
+        this(cookieManager, timeout, pageCache, poolSize, Collections.emptySet());
+    }
+
+    /**
+     * initialize a new HtmlUnitBrowser which blocks the requests to the specified hosts
+     * @param pageCache
+     * @param poolSize the max number of web clients used at the same time
+     * @param blockedHosts a host is blocked if it's one of them or a sub domain of one of them
+     */
+    public HtmlUnitBrowser(CookieManager cookieManager, int timeout, PageCache pageCache, int poolSize, Set<String> blockedHosts){
         this.timeout = timeout;
         this.cookieManager = cookieManager;
         this.isLogin = false;//if cookieManager has preserved the login information
+        this.pageCache = pageCache;
+        this.blockedHosts = blockedHosts;
+        this.pool = new WebClientPool(this::newClient, poolSize, MAX_PAGE_NUM);
+    }
+
+    /**
+     * create a new web client, and load a blank page to warm up its JS engine
+     * @return
+     */
+    private WebClient newClient() {
+        WebClient client = new WebClient(BrowserVersion.BEST_SUPPORTED);
+        client.setCookieManager(cookieManager);
+        client.getOptions().setCssEnabled(false);//headless browser no need to support css
+        client.getOptions().setDownloadImages(false);//headless browser no need to support download imgs
+        client.getOptions().setJavaScriptEnabled(true);
+        client.getOptions().setThrowExceptionOnFailingStatusCode(false);//wouldn't log when access error
+        client.getOptions().setThrowExceptionOnScriptError(false);//wouldn't log when js run error
+        client.getOptions().setTimeout(timeout);//set the timeout for browser to connect
+        client.getOptions().setDoNotTrackEnabled(true);
+        client.getOptions().setHistoryPageCacheLimit(1);//limit the cache number
+        client.getOptions().setHistorySizeLimit(1);
+        client.setAjaxController(new NicelyResynchronizingAjaxController());
+        client.setCache(STATIC_CACHE);//reuse the scripts downloaded and compiled by other clients
+        new FilteringWebConnection(client, STATIC_CACHE, blockedHosts);//install itself to the client
+        client.setJavaScriptTimeout(timeout);
+        client.waitForBackgroundJavaScript(timeout);
+        try {
+            client.getPage("about:blank");
+        } catch (IOException ex) {
+            //ignored
+        }
+        return client;
+    }
+
+    /**
+     * borrow a web client from the pool to do the operation, and give it back after the operation
+     * @param op
+     * @param <T>
+     * @return
+     */
+    private <T> T withClient(Function<WebClient, T> op) {
+        WebClient client = pool.borrow();
+        try {
+            return op.apply(client);
+        } finally {
+            pool.giveBack(client, 1);
+        }
+    }
+
+    /**
+     * get the parts of the page corresponding to the URL, such as its text, the content of a xpath or its info links,
+     * if the page cache is used, the parts of a query page read by the probing and the harvesting are extracted and cached
+     * once the page is rendered, so the page is loaded only once and never parsed again
+     * @param URL
+     * @param parts the keys of the parts, built by TEXT_PART, LINKS_PART and nodePart(xpath)
+     * @return the value of each part, null if the page can't be accessed
+     */
+    private String[] getParts(String URL, String... parts) {
+        if (pageCache == null || !isQueryPage(URL)) {
+            return withClient(client -> extractParts(retryGetPage(client, URL), parts));
+        }
+        String[] values = new String[parts.length];
+        boolean hit = true;
+        for (int i = 0; i < parts.length && hit; i++) {
+            values[i] = pageCache.get(parts[i] + URL);
+            hit = values[i] != null;
+        }
+        if (hit) {
+            return values;
+        }
+        //the parts which would be read by the probing and the harvesting of the same page
+        Set<String> cachedParts = new LinkedHashSet<>(Arrays.asList(parts));
+        cachedParts.add(TEXT_PART);
+        cachedParts.add(LINKS_PART);
+        cachedParts.add(nodePart(Constant.urlBaseConf.getInfoLinkXpath()));
+        String totalXpath = Constant.urlBaseConf.getTotalXpath();
+        if (StringUtils.isNotBlank(totalXpath) || StringUtils.isNotBlank(Constant.urlBaseConf.getTotalRegex())) {
+            cachedParts.add(nodePart(StringUtils.isNotBlank(totalXpath) ? totalXpath : "//body"));
+        }
+        cachedParts.remove(null);
+        String[] cachedKeys = cachedParts.toArray(new String[0]);
+        return withClient(client -> {
+            String[] cachedValues = extractParts(retryGetPage(client, URL), cachedKeys);
+            if (cachedValues == null) {
+                return null;
+            }
+            for (int i = 0; i < cachedKeys.length; i++) {
+                pageCache.put(cachedKeys[i] + URL, cachedValues[i]);
+            }
+            return Arrays.copyOf(cachedValues, parts.length);
+        });
+    }
 
+    /**
+     * extract the parts from the rendered page
+     * @param page
+     * @param parts
+     * @return null if the page is null
+     */
+    private static String[] extractParts(HtmlPage page, String... parts) {
+        if (page == null) {
+            return null;
+        }
+        String[] values = new String[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (TEXT_PART.equals(parts[i])) {
+                values[i] = StringUtils.defaultString(page.getBody().asText());
+            } else if (LINKS_PART.equals(parts[i])) {
+                StringBuilder sb = new StringBuilder();
+                for (Info link : LINK_EXTRACTOR.extract(page, Constant.urlBaseConf.getInfoLinkXpath(), null)) {
+                    sb.append(link.getUrl()).append('\n');
+                }
+                values[i] = sb.toString();
+            } else {
+                values[i] = getNodeContent(page, parts[i].substring(NODE_PART.length(), parts[i].length() - 1)).orElse("");
+            }
+        }
+        return values;
     }
 
+    /**
+     * the key of the content of the xpath
+     * @param xpath
+     * @return null if the xpath is blank
+     */
+    private static String nodePart(String xpath) {
+        return StringUtils.isBlank(xpath) ? null : NODE_PART + xpath + " ";
+    }
+
+    /**
+     * judge whether the page is a result page of the URL based query, only the result pages are cached
+     * @param URL
+     * @return
+     */
+    private static boolean isQueryPage(String URL) {
+        if (Constant.urlBaseConf == null || StringUtils.isBlank(Constant.urlBaseConf.getParamQuery())) {
+            return false;
+        }
+        return URL.startsWith(StringUtils.defaultString(Constant.urlBaseConf.getPrefix()))
+                && URL.contains(Constant.urlBaseConf.getParamQuery() + "=");
+    }
+
+    /**
+     * decode the info links of the LINKS_PART
+     * @param value
+     * @return
+     */
+    private static List<Info> toLinks(String value) {
+        List<Info> links = new ArrayList<>();
+        for (String url : StringUtils.split(value, '\n')) {
+            links.add(Info.link(url));
+        }
+        return links;
+    }
 
 
     /**
@@ -85,7 +270,7 @@ public final class HtmlUnitBrowser implements WebBrowser {
     public boolean login(String loginURL, String username, String password, String usernameXpath, String passwordXpath, String submitXpath) {
         WebClient client = null;
         try {
-            client = threadClient.get();
+            client = pool.borrow();
             HtmlTextInput userNameInput = null;//the username input
             HtmlPasswordInput passwordInput = null;//the password input
             HtmlElement button = null;//the login button, probably no a button
@@ -119,24 +304,57 @@ public final class HtmlUnitBrowser implements WebBrowser {
         } catch (Exception ex) {
             logger.error("Exception happen when get login page", ex);
             return false;
+        } finally {
+            if (client != null) {
+                pool.giveBack(client, 1);
+            }
         }
     }
 
     @Override
     public Optional<String> getPageContent(String URL) {
-        WebClient client = threadClient.get();
-        HtmlElement body = new Try<HtmlElement>(3).run(() -> {
-                HtmlElement ans = null;
-                try {
-                    ans = ((HtmlPage)client.getPage(URL)).getBody();
-                } catch (Exception ex) {
-                    logger.error("Exception happen when get page content from" + URL, ex);
-                }
-                return ans;
+        String[] values = getParts(URL, TEXT_PART);
+        return values == null ? Optional.empty() : Optional.of(values[0]);
+    }
 
-        });
-        return Optional.ofNullable(body.asText());
+    @Override
+    public Optional<String> getPageContent(String URL, String xpath) {
+        if (StringUtils.isBlank(xpath)) {
+            return Optional.empty();
+        }
+        String[] values = getParts(URL, nodePart(xpath));
+        return values == null || values[0].isEmpty() ? Optional.empty() : Optional.of(values[0]);
+    }
 
+    /**
+     * get the text of the nodes matching the xpath, one line for each node
+     * @param page
+     * @param xpath
+     * @return empty if the page is null or no node matches the xpath
+     */
+    private static Optional<String> getNodeContent(HtmlPage page, String xpath) {
+        if (page == null) {
+            return Optional.empty();
+        }
+        List<?> nodes = page.getByXPath(xpath);
+        if (nodes.isEmpty()) {
+            return Optional.empty();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object node : nodes) {
+            //the xpath may point to a string value, such as text()
+            sb.append(node instanceof DomNode ? ((DomNode) node).asText() : node.toString()).append('\n');
+        }
+        return Optional.of(sb.toString());
+    }
+
+    @Override
+    public PageLinks getLinksAndContent(String URL, LinkCollector collector, String xpath) {
+        String[] values = getParts(URL, LINKS_PART, nodePart(xpath));
+        if (values == null) {
+            return new PageLinks(Collections.emptyList(), Optional.empty());
+        }
+        return new PageLinks(collector.privateOp(toLinks(values[0])), values[1].isEmpty() ? Optional.empty() : Optional.of(values[1]));
     }
 
     public List<Info> getAllLinks(Query query, LinkCollector collector) {
@@ -155,7 +373,7 @@ public final class HtmlUnitBrowser implements WebBrowser {
         WebClient client = null;
 
         try {
-            client = threadClient.get();
+            client = pool.borrow();
             HtmlPage page = client.getPage(URL);
             URL curURL = page.getUrl();//the URL of current page
             List<HtmlAnchor> anchors = page.getAnchors();
@@ -181,24 +399,30 @@ public final class HtmlUnitBrowser implements WebBrowser {
             logger.error("NullPointerException happen when get page content", ex);
         } catch (Exception ex) {
 
+        } finally {
+            if (client != null) {
+                pool.giveBack(client, 1);
+            }
         }
         return links;
     }
 
+    /**
+     * the web clients aren't bound to threads, so this method only closes the idle clients in the pool
+     */
     @Override
     public void clearResource() {
-        threadClient.remove();
-
+        pool.clear();
     }
 
     private List<Info> getLinksFromUrlBasedQuery(UrlBasedQuery query, LinkCollector collector) {
-        String URL = query.getUrl();
-        WebClient client = threadClient.get();
-        HtmlPage page = retryGetPage(client, URL);
-        return collector.collect(page.asXml(), page.getUrl(), Constant.urlBaseConf.getInfoLinkXpath(), null);
+        String[] values = getParts(query.getUrl(), LINKS_PART);
+        return values == null ? Collections.emptyList() : collector.privateOp(toLinks(values[0]));
     }
     private List<Info> getLinksFromApiBasedQuery(ApiBasedQuery query, LinkCollector collector) {
-        WebClient client = threadClient.get();
+        return withClient(client -> getLinksFromApiBasedQuery(client, query, collector));
+    }
+    private List<Info> getLinksFromApiBasedQuery(WebClient client, ApiBasedQuery query, LinkCollector collector) {
         HtmlPage page = retryGetPage(client, query.getUrl());
         if (page == null) {
             return Collections.emptyList();
@@ -260,7 +484,7 @@ public final class HtmlUnitBrowser implements WebBrowser {
                     //ignored
                 }
             }
-            if (!(links = collector.collect(page.asXml(), page.getUrl(), Constant.apiBaseConf.getInfoLinkXpath(), Constant.apiBaseConf.getPayloadXpath())).isEmpty()) {
+            if (!(links = collector.collect(page, Constant.apiBaseConf.getInfoLinkXpath(), Constant.apiBaseConf.getPayloadXpath())).isEmpty()) {
                 logger.info("have collect infos, continue to execute");
                 break;
             }
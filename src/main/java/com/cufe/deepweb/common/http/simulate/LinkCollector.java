@@ -2,6 +2,10 @@ package com.cufe.deepweb.common.http.simulate;
 
 import com.cufe.deepweb.crawler.Constant;
 import com.cufe.deepweb.crawler.service.infos.info.Info;
+import com.gargoylesoftware.htmlunit.html.DomAttr;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlAnchor;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import org.apache.commons.lang3.StringUtils;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.TagNode;
@@ -13,6 +17,7 @@ import java.net.URL;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * the abstract class of link collector
@@ -73,6 +78,66 @@ public abstract class LinkCollector {
         return links;
     }
 
+    /**
+     * collect the links fit this collector's demand from the DOM built by the browser, so the page needn't be serialized and parsed again
+     * @param page
+     * @param infoLinkXpath
+     * @param payloadXpath
+     * @return
+     */
+    public List<Info> collect(HtmlPage page, String infoLinkXpath, String payloadXpath) {
+        return privateOp(extract(page, infoLinkXpath, payloadXpath));
+    }
+
+    /**
+     * extract all the links from the DOM built by the browser, without this collector's private operation
+     * @param page
+     * @param infoLinkXpath
+     * @param payloadXpath
+     * @return the links whose relative address has been resolved
+     */
+    public List<Info> extract(HtmlPage page, String infoLinkXpath, String payloadXpath) {
+        List<Info> links = new ArrayList<>();
+        if (StringUtils.isNotBlank(infoLinkXpath)) {
+            for (Object node : page.getByXPath(infoLinkXpath)) {
+                if (node instanceof DomElement) {
+                    links.add(Info.link(((DomElement) node).getAttribute("href")));
+                }
+            }
+            if (Objects.nonNull(payloadXpath)) {
+                String[] slices = payloadXpath.split(",");//0:xpath 1:attribute
+                List<?> ps = page.getByXPath(slices[0]);
+                if (links.size() == ps.size()) {
+                    for (int i = 0; i < ps.size(); i++) {
+                        DomElement node = (DomElement) ps.get(i);
+                        String payload = "";
+                        for (int j = 1; j < slices.length; j++) {//if have pointed some attribute name, just collect them
+                            payload += node.getAttribute(slices[j]);
+                        }
+                        if (slices.length == 1) {//if haven't specified any attribute name, just collect all of them
+                            for (DomAttr attribute : node.getAttributesMap().values()) {
+                                payload += attribute.getValue();
+                            }
+                        }
+                        links.get(i).addPayLoad(Constant.FT_INDEX_FIELD, payload);
+                    }
+                }
+            }
+            //the node without href is removed after the payloads are matched with the links
+            links = links.stream().filter(link -> StringUtils.isNotBlank(link.getUrl())).collect(Collectors.toList());
+        } else {
+            for (HtmlAnchor anchor : page.getAnchors()) {
+                String href = anchor.getHrefAttribute();
+                if (StringUtils.isNotBlank(href) && pattern.matcher(href).matches()) {
+                    links.add(Info.link(href));
+                }
+            }
+        }
+        links.forEach(link -> link.fixUrl(page.getUrl()));
+        logger.trace("queryLink:{} infoLinks:{}", page.getUrl(), Arrays.toString(links.toArray()));
+        return links;
+    }
+
     public List<Info> collectByXpath(TagNode root, String infoLinkXpath, String payloadXpath) {
         List<Info> links = new ArrayList<>();
         try {
@@ -0,0 +1,108 @@
+package com.cufe.deepweb.common.http.simulate;
+
+import com.gargoylesoftware.htmlunit.Cache;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * the process-wide cache of the static resources (JS and CSS) shared by all the web clients,
+ * HtmlUnit caches a script together with its compiled object, so a fresh cached script is neither downloaded nor compiled again by another client
+ * the default Cache of HtmlUnit only caches the resources which are not modified for a while, this cache caches all the static resources
+ * unless the server forbids it, their freshness is still judged by HtmlUnit according to the Cache-Control and Expires headers
+ * the stale resources with validators (ETag or Last-Modified) are kept separately, so they can be revalidated by a conditional request instead of downloaded again
+ * this class is thread-safe
+ */
+final class StaticResourceCache extends Cache {
+    /**
+     * the max number of the cached resources
+     */
+    private static final int MAX_SIZE = 1000;
+    /**
+     * the max number of the resources kept for revalidation
+     */
+    private static final int MAX_VALIDATED_SIZE = 200;
+    private final Map<String, Validated> validated;
+
+    StaticResourceCache() {
+        setMaxSize(MAX_SIZE);
+        validated = new LinkedHashMap<String, Validated>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Validated> eldest) {
+                return size() > MAX_VALIDATED_SIZE;
+            }
+        };
+    }
+
+    @Override
+    protected boolean isCacheableContent(WebResponse response) {
+        if (isStatic(response) && !isNoStore(response)) {
+            return true;
+        }
+        return super.isCacheableContent(response);
+    }
+
+    /**
+     * get the resource kept for revalidation
+     * @param url
+     * @return null if not kept
+     */
+    Validated getValidated(URL url) {
+        synchronized (validated) {
+            return validated.get(url.toExternalForm());
+        }
+    }
+
+    /**
+     * keep the static resource for revalidation if it has validators
+     * @param response
+     * @param body the content of the response
+     */
+    void putValidated(WebResponse response, byte[] body) {
+        if (!isStatic(response) || isNoStore(response)) return;
+        String eTag = response.getResponseHeaderValue("ETag");
+        String lastModified = response.getResponseHeaderValue("Last-Modified");
+        if (eTag == null && lastModified == null) return;
+        WebResponseData data = new WebResponseData(body, response.getStatusCode(), response.getStatusMessage(), response.getResponseHeaders());
+        synchronized (validated) {
+            validated.put(response.getWebRequest().getUrl().toExternalForm(), new Validated(data, eTag, lastModified));
+        }
+    }
+
+    /**
+     * whether the response is a script or a style sheet
+     * @param response
+     * @return
+     */
+    static boolean isStatic(WebResponse response) {
+        String contentType = response.getContentType();
+        if (contentType != null && (contentType.contains("javascript") || contentType.contains("ecmascript") || contentType.contains("css"))) {
+            return true;
+        }
+        String path = response.getWebRequest().getUrl().getPath().toLowerCase();
+        return path.endsWith(".js") || path.endsWith(".css");
+    }
+
+    private static boolean isNoStore(WebResponse response) {
+        String cacheControl = response.getResponseHeaderValue("Cache-Control");
+        return cacheControl != null && cacheControl.toLowerCase().contains("no-store");
+    }
+
+    /**
+     * the static resource with its validators
+     */
+    static final class Validated {
+        final WebResponseData data;
+        final String eTag;
+        final String lastModified;
+
+        Validated(WebResponseData data, String eTag, String lastModified) {
+            this.data = data;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -29,6 +29,14 @@ public interface WebBrowser {
      */
     Optional<String> getPageContent(String URL);
 
+    /**
+     * get the text of the nodes matching the xpath in the page corresponding to the specified url, one line for each node
+     * @param URL
+     * @param xpath
+     * @return empty if the page can't be accessed or no node matches the xpath
+     */
+    Optional<String> getPageContent(String URL, String xpath);
+
     /**
      * get the links from the specified page
      * @param query
@@ -37,5 +45,38 @@ public interface WebBrowser {
      */
     List<Info> getAllLinks(Query query, LinkCollector collector);
 
+    /**
+     * get the info links and the text of the nodes matching the xpath from the same URL based query page, so the page is loaded only once
+     * @param URL
+     * @param collector
+     * @param xpath
+     * @return
+     */
+    PageLinks getLinksAndContent(String URL, LinkCollector collector, String xpath);
+
+    /**
+     * the links of a page and the text of the nodes matching an xpath in the same page
+     */
+    final class PageLinks {
+        private final List<Info> links;
+        private final Optional<String> content;
+
+        public PageLinks(List<Info> links, Optional<String> content) {
+            this.links = links;
+            this.content = content;
+        }
+
+        public List<Info> getLinks() {
+            return links;
+        }
+
+        /**
+         * @return empty if the page can't be accessed or no node matches the xpath
+         */
+        public Optional<String> getContent() {
+            return content;
+        }
+    }
+
     void clearResource();
 }
@@ -0,0 +1,153 @@
+package com.cufe.deepweb.common.http.simulate;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * the bounded pool of WebClient, the threads borrow the clients and give them back after using instead of creating their own clients,
+ * so the JS engine and the keep-alive connections of a client are reused
+ * a client is recycled (closed) when it has served too many pages, or when the heap is nearly full,
+ * the idle clients are used in LIFO order to keep the warm clients busy
+ * this class is thread-safe
+ */
+public final class WebClientPool {
+    private final Logger logger = LoggerFactory.getLogger(WebClientPool.class);
+    /**
+     * recycle the returned client if the used heap is bigger than this ratio of the max heap
+     */
+    private static final double HEAP_RATIO = 0.85;
+    private final Supplier<WebClient> factory;
+    private final int maxSize;
+    /**
+     * the max page number served by a client before it's recycled
+     */
+    private final int maxPageNum;
+    private final Deque<WebClient> idle;
+    /**
+     * the served page number of all the clients created by this pool, both idle and borrowed
+     */
+    private final Map<WebClient, Integer> pageNums;
+    /**
+     * the number of clients being created
+     */
+    private int creatingNum;
+
+    /**
+     * @param factory create a new client
+     * @param maxSize the max client number
+     * @param maxPageNum the max page number served by a client
+     */
+    public WebClientPool(Supplier<WebClient> factory, int maxSize, int maxPageNum) {
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.maxPageNum = maxPageNum;
+        idle = new ArrayDeque<>();
+        pageNums = new IdentityHashMap<>();
+        creatingNum = 0;
+    }
+
+    /**
+     * borrow a client, if all the clients are borrowed and the pool is full, wait until a client is returned
+     * @return
+     */
+    public WebClient borrow() {
+        synchronized (this) {
+            while (idle.isEmpty() && pageNums.size() + creatingNum >= maxSize) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (!idle.isEmpty()) {
+                return idle.pollFirst();
+            }
+            //reserve the place of the new client, the client is created out of the lock
+            creatingNum++;
+        }
+        WebClient client = null;
+        try {
+            client = factory.get();
+            return client;
+        } finally {
+            synchronized (this) {
+                creatingNum--;
+                if (client != null) {
+                    pageNums.put(client, 0);
+                } else {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * give back the borrowed client
+     * @param client
+     * @param pageNum the page number served in this borrowing
+     */
+    public void giveBack(WebClient client, int pageNum) {
+        boolean recycle;
+        int served;
+        synchronized (this) {
+            Integer before = pageNums.get(client);
+            if (before == null) return;
+            served = before + pageNum;
+            recycle = served >= maxPageNum || isHeapFull();
+            if (recycle) {
+                pageNums.remove(client);
+            } else {
+                pageNums.put(client, served);
+                idle.offerFirst(client);
+            }
+            notifyAll();
+        }
+        if (recycle) {
+            logger.trace("recycle the web client which has served {} pages", served);
+            client.close();
+        }
+    }
+
+    /**
+     * close all the idle clients, the borrowed clients aren't affected
+     */
+    public void clear() {
+        WebClient[] clients;
+        synchronized (this) {
+            clients = idle.toArray(new WebClient[0]);
+            idle.clear();
+            for (WebClient client : clients) {
+                pageNums.remove(client);
+            }
+            notifyAll();
+        }
+        for (WebClient client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * the number of the clients created by this pool and not recycled, both idle and borrowed
+     * @return
+     */
+    public synchronized int getSize() {
+        return pageNums.size();
+    }
+
+    public synchronized int getIdleSize() {
+        return idle.size();
+    }
+
+    private static boolean isHeapFull() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() > runtime.maxMemory() * HEAP_RATIO;
+    }
+}
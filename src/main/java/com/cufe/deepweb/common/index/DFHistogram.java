@@ -0,0 +1,111 @@
+package com.cufe.deepweb.common.index;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import java.util.Arrays;
+
+/**
+ * the document frequency histogram of a field's vocabulary, built by one enumeration of the term dictionary,
+ * it's used to count the terms in a DF range without scanning the index again
+ */
+public final class DFHistogram {
+    /**
+     * the document size of the index when building this histogram
+     */
+    private final int numDocs;
+    /**
+     * counts[df] is the number of terms whose document frequency is df
+     */
+    private int[] counts;
+    private int maxDF;
+    private long termNum;
+
+    public DFHistogram(int numDocs) {
+        this.numDocs = numDocs;
+        counts = new int[16];
+        maxDF = 0;
+        termNum = 0;
+    }
+
+    /**
+     * record a term with the specified document frequency
+     * @param df
+     */
+    public void add(int df) {
+        if (df >= counts.length) {
+            counts = Arrays.copyOf(counts, ArrayUtil.oversize(df + 1, Integer.BYTES));
+        }
+        counts[df]++;
+        maxDF = Math.max(maxDF, df);
+        termNum++;
+    }
+
+    /**
+     * remove a recorded term with the specified document frequency, such as the term has been selected as query
+     * @param df
+     */
+    public void remove(int df) {
+        if (df < counts.length && counts[df] > 0) {
+            counts[df]--;
+            termNum--;
+        }
+    }
+
+    /**
+     * count the terms whose document frequency is in (low * numDocs, up * numDocs],
+     * this is the same range used by IndexClient.getDocSetMap
+     * @param low
+     * @param up
+     * @return
+     */
+    public long count(double low, double up) {
+        long num = 0;
+        int end = Math.min(maxDF, counts.length - 1);
+        for (int df = 1; df <= end; df++) {
+            if ((low * numDocs) < df && df <= (up * numDocs)) {
+                num += counts[df];
+            }
+        }
+        return num;
+    }
+
+    /**
+     * the number of terms whose document frequency is df
+     * @param df
+     * @return
+     */
+    public int getTermNum(int df) {
+        return df < counts.length ? counts[df] : 0;
+    }
+
+    public long getTermNum() {
+        return termNum;
+    }
+
+    public int getMaxDF() {
+        return maxDF;
+    }
+
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    /**
+     * print the histogram in logarithmic DF buckets, such as [1,1] [2,3] [4,7] ...
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("numDocs:").append(numDocs).append(", terms:").append(termNum);
+        for (int start = 1; start <= maxDF; start <<= 1) {
+            int end = Math.min((start << 1) - 1, maxDF);
+            long num = 0;
+            for (int df = start; df <= end; df++) {
+                num += counts[df];
+            }
+            builder.append(", [").append(start).append(',').append(end).append("]:").append(num);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,374 @@
+package com.cufe.deepweb.common.index;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * the approximate document frequency statistics of a field, maintained when the documents are added into index,
+ * the DF of each term is counted by a count-min sketch with conservative update,
+ * and the terms with the biggest DF are kept in a heavy-hitters table,
+ * so the candidate terms in a DF range can be got without enumerating the whole term dictionary
+ * the estimated DF is never lower than the real DF, and is higher than it by at most getError() with probability 1 - e^-depth
+ * the terms are spread into STRIPE_NUM stripes by hash, the updates of the same term are serialized by the lock of its stripe,
+ * and the counters only grow by CAS, so the documents can be recorded by the indexing threads at the same time
+ * this class is thread-safe
+ */
+public final class DFSketch {
+    private static final int STRIPE_NUM = 64;
+    private static final int STRIPE_SEED = 0x5bd1e995;
+    /**
+     * the field focused by this sketch
+     */
+    private final String field;
+    private final int depth;
+    private final int width;
+    private final AtomicIntegerArray[] counters;
+    /**
+     * the sum of the DF added into the counters, used to compute the error of estimation
+     */
+    private final AtomicLong totalDF;
+    private final Stripe[] stripes;
+    /**
+     * the biggest estimated DF of the terms evicted from the heavy-hitters table,
+     * a term which isn't in the table has a real DF not bigger than this value, because a term is put back when its DF grows
+     */
+    private final AtomicInteger evictedDF;
+    /**
+     * the distinct terms of the document being indexed in current thread
+     */
+    private final ThreadLocal<DocumentTerms> recorder = ThreadLocal.withInitial(DocumentTerms::new);
+
+    /**
+     * @param field
+     * @param depth the number of hash functions
+     * @param width the counter number of each hash function, must be a power of 2
+     * @param capacity the number of terms kept in the heavy-hitters table
+     */
+    public DFSketch(String field, int depth, int width, int capacity) {
+        if (Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("the width must be a power of 2, but it's " + width);
+        }
+        this.field = field;
+        this.depth = depth;
+        this.width = width;
+        counters = new AtomicIntegerArray[depth];
+        for (int i = 0; i < depth; i++) {
+            counters[i] = new AtomicIntegerArray(width);
+        }
+        totalDF = new AtomicLong(0);
+        stripes = new Stripe[STRIPE_NUM];
+        for (int i = 0; i < STRIPE_NUM; i++) {
+            stripes[i] = new Stripe(Math.max(capacity / STRIPE_NUM, 1));
+        }
+        evictedDF = new AtomicInteger(0);
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * record a document by its distinct terms, the terms are grouped by stripe, so each stripe is locked once
+     * @param terms
+     */
+    private void addDocument(BytesRefHash terms) {
+        int size = terms.size();
+        int[] stripeOf = new int[size];
+        int[] starts = new int[STRIPE_NUM + 1];
+        BytesRef term = new BytesRef();
+        for (int id = 0; id < size; id++) {
+            stripeOf[id] = stripe(terms.get(id, term));
+            starts[stripeOf[id] + 1]++;
+        }
+        for (int i = 0; i < STRIPE_NUM; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] order = new int[size];
+        int[] next = Arrays.copyOf(starts, STRIPE_NUM);
+        for (int id = 0; id < size; id++) {
+            order[next[stripeOf[id]]++] = id;
+        }
+        for (int i = 0; i < STRIPE_NUM; i++) {
+            if (starts[i] == starts[i + 1]) continue;
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                for (int j = starts[i]; j < starts[i + 1]; j++) {
+                    update(stripe, terms.get(order[j], term), 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * increase the DF of the specified term, used to load the existing index
+     * @param term
+     * @param df
+     */
+    public void addTerm(BytesRef term, int df) {
+        Stripe stripe = stripes[stripe(term)];
+        synchronized (stripe) {
+            update(stripe, term, df);
+        }
+    }
+
+    /**
+     * the lock of the term's stripe must be held
+     * @param stripe
+     * @param term
+     * @param df
+     */
+    private void update(Stripe stripe, BytesRef term, int df) {
+        int[] positions = positions(term);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters[i].get(positions[i]));
+        }
+        //conservative update: only the counters which would be lower than the new estimation are increased
+        int estimation = min + df;
+        for (int i = 0; i < depth; i++) {
+            counters[i].accumulateAndGet(positions[i], estimation, Math::max);
+        }
+        totalDF.addAndGet(df);
+        stripe.put(term, estimation);
+    }
+
+    /**
+     * the estimated DF of the specified term, it's never lower than the real DF
+     * @param term
+     * @return
+     */
+    public int estimate(BytesRef term) {
+        int[] positions = positions(term);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters[i].get(positions[i]));
+        }
+        return min;
+    }
+
+    /**
+     * the max overestimation of the sketch with probability 1 - e^-depth
+     * @return
+     */
+    public int getError() {
+        return (int) Math.ceil(Math.E * totalDF.get() / width);
+    }
+
+    /**
+     * get the terms whose real DF may be in (lowDF, upDF] from the heavy-hitters table,
+     * because the estimation is higher than the real DF, the terms whose estimated DF is in (lowDF, upDF + getError()] are returned,
+     * the caller should filter them by the real DF
+     * @param lowDF
+     * @param upDF
+     * @return the terms in the order of BytesRef, null if a term in the range may have been evicted from the table,
+     *         then the term dictionary should be enumerated instead
+     */
+    public List<BytesRef> getCandidates(double lowDF, double upDF) {
+        if (lowDF < evictedDF.get()) {
+            return null;
+        }
+        double up = upDF + getError();
+        List<BytesRef> candidates = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                BytesRef term = new BytesRef();
+                for (int id = 0; id < stripe.terms.size(); id++) {
+                    int df = stripe.dfs[id];
+                    if (lowDF < df && df <= up) {
+                        candidates.add(BytesRef.deepCopyOf(stripe.terms.get(id, term)));
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates);
+        return candidates;
+    }
+
+    /**
+     * build the DF histogram from the heavy-hitters table by the estimated DF,
+     * the terms which have been evicted aren't counted, so the histogram is only complete above the biggest evicted DF
+     * @param docNum the document number of the index
+     * @param excludedTerms
+     * @return
+     */
+    public DFHistogram getHistogram(int docNum, Collection<String> excludedTerms) {
+        DFHistogram histogram = new DFHistogram(docNum);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int id = 0; id < stripe.terms.size(); id++) {
+                    histogram.add(stripe.dfs[id]);
+                }
+            }
+        }
+        for (String excluded : new HashSet<>(excludedTerms)) {
+            BytesRef term = new BytesRef(excluded);
+            Stripe stripe = stripes[stripe(term)];
+            synchronized (stripe) {
+                int id = stripe.terms.find(term);
+                if (id >= 0) {
+                    histogram.remove(stripe.dfs[id]);
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private int[] positions(BytesRef term) {
+        int[] positions = new int[depth];
+        for (int i = 0; i < depth; i++) {
+            positions[i] = StringHelper.murmurhash3_x86_32(term, i * 0x9E3779B9) & (width - 1);
+        }
+        return positions;
+    }
+
+    private static int stripe(BytesRef term) {
+        return (StringHelper.murmurhash3_x86_32(term, STRIPE_SEED) & 0x7fffffff) % STRIPE_NUM;
+    }
+
+    /**
+     * start to record the terms of a document in current thread
+     */
+    void startDocument() {
+        DocumentTerms doc = recorder.get();
+        doc.reset();
+        doc.recording = true;
+    }
+
+    /**
+     * stop recording in current thread
+     * @param indexed whether the document has been indexed successfully, if not, the recorded terms are dropped
+     */
+    void finishDocument(boolean indexed) {
+        DocumentTerms doc = recorder.get();
+        doc.recording = false;
+        if (indexed) {
+            addDocument(doc.terms);
+        }
+        doc.reset();
+    }
+
+    /**
+     * wrap the analyzer to record the indexed terms of the focused field, so the document needn't be analyzed twice
+     * @param analyzer
+     * @return
+     */
+    Analyzer wrap(Analyzer analyzer) {
+        return new AnalyzerWrapper(Analyzer.PER_FIELD_REUSE_STRATEGY) {
+            @Override
+            protected Analyzer getWrappedAnalyzer(String fieldName) {
+                return analyzer;
+            }
+
+            @Override
+            protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+                if (!field.equals(fieldName)) {
+                    return components;
+                }
+                return new TokenStreamComponents(components.getTokenizer(), new RecordingFilter(components.getTokenStream()));
+            }
+        };
+    }
+
+    /**
+     * the part of the heavy-hitters table whose terms belong to a stripe, term to its estimated DF,
+     * when its size is bigger than twice of capacity, only the top capacity terms are kept
+     */
+    private final class Stripe {
+        private final int capacity;
+        private BytesRefHash terms;
+        private int[] dfs;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            terms = new BytesRefHash();
+            dfs = new int[16];
+        }
+
+        void put(BytesRef term, int df) {
+            int id = terms.add(term);
+            if (id < 0) {
+                id = -id - 1;
+            } else {
+                dfs = ArrayUtil.grow(dfs, id + 1);
+            }
+            dfs[id] = df;
+            if (terms.size() > capacity * 2) {
+                prune();
+            }
+        }
+
+        private void prune() {
+            int size = terms.size();
+            int[] values = Arrays.copyOf(dfs, size);
+            Arrays.sort(values);
+            int threshold = values[size - capacity];
+            BytesRefHash kept = new BytesRefHash();
+            int[] keptDFs = new int[capacity * 2 + 1];
+            int evicted = 0;
+            BytesRef term = new BytesRef();
+            for (int id = 0; id < size; id++) {
+                if (dfs[id] < threshold) {
+                    evicted = Math.max(evicted, dfs[id]);
+                    continue;
+                }
+                int keptID = kept.add(terms.get(id, term));
+                keptDFs = ArrayUtil.grow(keptDFs, keptID + 1);
+                keptDFs[keptID] = dfs[id];
+            }
+            terms = kept;
+            dfs = keptDFs;
+            evictedDF.accumulateAndGet(evicted, Math::max);
+        }
+    }
+
+    /**
+     * the distinct terms of a document, reused by the documents indexed in the same thread
+     */
+    private static final class DocumentTerms {
+        private final BytesRefHash terms = new BytesRefHash();
+        private boolean recording = false;
+
+        void reset() {
+            terms.clear();
+            terms.reinit();
+        }
+    }
+
+    /**
+     * record the final terms of the token stream if current thread is indexing a document
+     */
+    private final class RecordingFilter extends TokenFilter {
+        private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+        private final BytesRefBuilder spare = new BytesRefBuilder();
+        RecordingFilter(TokenStream input) {
+            super(input);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (!input.incrementToken()) {
+                return false;
+            }
+            DocumentTerms doc = recorder.get();
+            if (doc.recording) {
+                spare.copyChars(termAtt);
+                doc.terms.add(spare.get());
+            }
+            return true;
+        }
+    }
+}
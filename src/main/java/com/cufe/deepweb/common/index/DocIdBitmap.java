@@ -0,0 +1,252 @@
+package com.cufe.deepweb.common.index;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * immutable compressed docID set used as the posting set of a term in the set covering matrix
+ * the docID space is split into blocks of 65536 docIDs like roaring bitmap,
+ * a sparse block stores the low 16 bits of its docIDs in a sorted short array,
+ * a dense block stores a bitmap of 1024 longs which has the same word layout as lucene's FixedBitSet,
+ * so the set difference and the cardinality against a FixedBitSet can be computed word by word
+ */
+public final class DocIdBitmap {
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_WORDS = BLOCK_SIZE >>> 6;
+    /**
+     * a block containing more docIDs than this value is stored as bitmap, because 4096 shorts cost as much as 1024 longs
+     */
+    private static final int MAX_ARRAY_LENGTH = BLOCK_SIZE >>> 4;
+    private static final int INITIAL_BUFFER_LENGTH = 16;
+    private static final DocIdBitmap EMPTY = new DocIdBitmap(new int[0], new short[0][], new long[0][], 0, 0);
+
+    /**
+     * the block number of each non-empty block, ascending
+     */
+    private final int[] keys;
+    /**
+     * only one of arrays[i] and bitmaps[i] is not null
+     */
+    private final short[][] arrays;
+    private final long[][] bitmaps;
+    private final int cardinality;
+    /**
+     * the biggest docID in this set plus one
+     */
+    private final int length;
+
+    private DocIdBitmap(int[] keys, short[][] arrays, long[][] bitmaps, int cardinality, int length) {
+        this.keys = keys;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.cardinality = cardinality;
+        this.length = length;
+    }
+
+    public static DocIdBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * the number of docIDs in this set
+     * @return
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * the biggest docID in this set plus one, can be used to size the FixedBitSet
+     * @return
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * compute the number of docIDs in this set but not in the specified bit set, |this - covered|
+     * @param covered
+     * @return
+     */
+    public int andNotCardinality(FixedBitSet covered) {
+        long[] words = covered.getBits();
+        int numBits = covered.length();
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int base = keys[i] << BLOCK_SHIFT;
+            if (bitmaps[i] != null) {
+                long[] block = bitmaps[i];
+                int wordBase = base >>> 6;
+                for (int j = 0; j < BLOCK_WORDS; j++) {
+                    long w = block[j];
+                    if (w == 0) continue;
+                    int k = wordBase + j;
+                    count += Long.bitCount(k < words.length ? w & ~words[k] : w);
+                }
+            } else {
+                for (short low : arrays[i]) {
+                    int doc = base | (low & 0xFFFF);
+                    if (doc >= numBits || !covered.get(doc)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * add all the docIDs in this set into the specified bit set, the bit set must be big enough to hold length()
+     * @param covered
+     */
+    public void orInto(FixedBitSet covered) {
+        long[] words = covered.getBits();
+        for (int i = 0; i < keys.length; i++) {
+            int base = keys[i] << BLOCK_SHIFT;
+            if (bitmaps[i] != null) {
+                long[] block = bitmaps[i];
+                int wordBase = base >>> 6;
+                int end = Math.min(BLOCK_WORDS, words.length - wordBase);
+                for (int j = 0; j < end; j++) {
+                    words[wordBase + j] |= block[j];
+                }
+            } else {
+                for (short low : arrays[i]) {
+                    covered.set(base | (low & 0xFFFF));
+                }
+            }
+        }
+    }
+
+    /**
+     * visit all the docIDs in ascending order
+     * @param consumer
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            int base = keys[i] << BLOCK_SHIFT;
+            if (bitmaps[i] != null) {
+                long[] block = bitmaps[i];
+                for (int j = 0; j < BLOCK_WORDS; j++) {
+                    long w = block[j];
+                    while (w != 0) {
+                        consumer.accept(base | (j << 6) | Long.numberOfTrailingZeros(w));
+                        w &= w - 1;
+                    }
+                }
+            } else {
+                for (short low : arrays[i]) {
+                    consumer.accept(base | (low & 0xFFFF));
+                }
+            }
+        }
+    }
+
+    /**
+     * the approximate memory cost of this set
+     * @return
+     */
+    public long ramBytesUsed() {
+        long size = RamUsageEstimator.shallowSizeOf(this) + RamUsageEstimator.sizeOf(keys)
+                + RamUsageEstimator.shallowSizeOf(arrays) + RamUsageEstimator.shallowSizeOf(bitmaps);
+        for (int i = 0; i < keys.length; i++) {
+            size += bitmaps[i] != null ? RamUsageEstimator.sizeOf(bitmaps[i]) : RamUsageEstimator.sizeOf(arrays[i]);
+        }
+        return size;
+    }
+
+    /**
+     * builder of DocIdBitmap, the docIDs must be added in ascending order
+     * this class is not thread-safe
+     */
+    public static final class Builder {
+        private int[] keys = new int[4];
+        private short[][] arrays = new short[4][];
+        private long[][] bitmaps = new long[4][];
+        private int blockNum = 0;
+        private int cardinality = 0;
+        private int lastDoc = -1;
+
+        /**
+         * the docIDs of the block being built, it grows on demand up to MAX_ARRAY_LENGTH,
+         * because most of the terms only have a few docIDs in a sub index
+         */
+        private short[] buffer = new short[INITIAL_BUFFER_LENGTH];
+        private long[] bitmap;
+        private int bufferSize = 0;
+        private int curKey = -1;
+
+        public Builder add(int doc) {
+            if (doc <= lastDoc) {
+                throw new IllegalArgumentException("docIDs must be added in ascending order, " + doc + " after " + lastDoc);
+            }
+            int key = doc >>> BLOCK_SHIFT;
+            if (key != curKey) {
+                flush();
+                curKey = key;
+            }
+            if (bitmap != null) {
+                bitmap[(doc & 0xFFFF) >>> 6] |= 1L << doc;
+            } else if (bufferSize < MAX_ARRAY_LENGTH) {
+                if (bufferSize == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(ArrayUtil.oversize(bufferSize + 1, Short.BYTES), MAX_ARRAY_LENGTH));
+                }
+                buffer[bufferSize] = (short) doc;
+            } else {
+                //the current block becomes dense, turn it into a bitmap
+                bitmap = new long[BLOCK_WORDS];
+                for (int i = 0; i < bufferSize; i++) {
+                    int low = buffer[i] & 0xFFFF;
+                    bitmap[low >>> 6] |= 1L << low;
+                }
+                bitmap[(doc & 0xFFFF) >>> 6] |= 1L << doc;
+            }
+            bufferSize++;
+            cardinality++;
+            lastDoc = doc;
+            return this;
+        }
+
+        /**
+         * add all the docIDs of another set shifted by offset, all of them must be bigger than the docIDs added before
+         * @param other
+         * @param offset such as the docBase of a sub index
+         */
+        public Builder addAll(DocIdBitmap other, int offset) {
+            other.forEach(doc -> add(offset + doc));
+            return this;
+        }
+
+        private void flush() {
+            if (bufferSize == 0) return;
+            if (blockNum == keys.length) {
+                int newSize = blockNum << 1;
+                keys = Arrays.copyOf(keys, newSize);
+                arrays = Arrays.copyOf(arrays, newSize);
+                bitmaps = Arrays.copyOf(bitmaps, newSize);
+            }
+            keys[blockNum] = curKey;
+            if (bitmap != null) {
+                bitmaps[blockNum] = bitmap;
+            } else {
+                arrays[blockNum] = Arrays.copyOf(buffer, bufferSize);
+            }
+            blockNum++;
+            bitmap = null;
+            bufferSize = 0;
+        }
+
+        public DocIdBitmap build() {
+            flush();
+            if (cardinality == 0) {
+                return EMPTY;
+            }
+            return new DocIdBitmap(Arrays.copyOf(keys, blockNum), Arrays.copyOf(arrays, blockNum), Arrays.copyOf(bitmaps, blockNum), cardinality, lastDoc + 1);
+        }
+    }
+}
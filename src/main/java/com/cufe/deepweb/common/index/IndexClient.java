@@ -12,6 +12,8 @@ import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +69,17 @@ public final class IndexClient implements Closeable {
      * the maximum hit number for unique query
      */
     private int maxHitNum;
+    /**
+     * the cache of extracted postings in each sub index, the key is the core cache key of sub index,
+     * the value is the term dictionary of the sub index with the docID sets of the candidate terms in the latest extraction,
+     * a sub index's postings never change once it's written, so only the new sub index need to be scanned,
+     * the entry is removed when the sub index is closed, such as merged into a bigger one
+     */
+    private final Map<Object, LeafPostings> postingsCache = new ConcurrentHashMap<>();
+    /**
+     * the approximate DF statistics of a field maintained when adding documents, null if it's not enabled
+     */
+    private DFSketch sketch;
     /**
      * initialize directory
      * @param builder
@@ -77,14 +90,44 @@ public final class IndexClient implements Closeable {
         this.searchThreadNum = builder.searchThreadNum;
         this.maxHitNum = builder.maxHitNum;
         this.indexAddr = builder.sampleAddr;
+        if (builder.sketchField != null) {
+            sketch = new DFSketch(builder.sketchField, 4, builder.sketchWidth, builder.sketchCapacity);
+            this.analyzer = sketch.wrap(this.analyzer);
+        }
         try{
             indexDirectory = FSDirectory.open(this.indexAddr);
             updateIndex();
+            loadSketch();
         }catch (IOException ex){
             logger.error("IOException in open lucene index",ex);
         }
     }
 
+    /**
+     * load the DF of the existing terms into the sketch, the term dictionary is enumerated only once
+     */
+    private void loadSketch() throws IOException {
+        if (sketch == null || indexReader == null) return;
+        Terms terms = MultiFields.getTerms(indexReader, sketch.getField());
+        if (terms != null) {
+            TermsEnum termsEnum = terms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                sketch.addTerm(term, termsEnum.docFreq());
+            }
+        }
+        logger.info("load {} documents into DF sketch of field {}", indexReader.numDocs(), sketch.getField());
+    }
+
+    /**
+     * judge whether the DF sketch can be used to get the candidate terms of the specified field
+     * @param field
+     * @return
+     */
+    private boolean useSketch(String field) {
+        return sketch != null && sketch.getField().equals(field);
+    }
+
     /**
      * force update index, can used to free memory out of JVM
      */
@@ -233,8 +276,13 @@ public final class IndexClient implements Closeable {
         for (Map.Entry<String, String> entry : fieldContentPairs.entrySet()) {
             doc.add(new TextField(entry.getKey(), entry.getValue(), Field.Store.YES));
         }
+        boolean indexed = false;
+        if (sketch != null) {
+            sketch.startDocument();
+        }
         try{
             indexWriter.addDocument(doc);
+            indexed = true;
         }catch (IOException ex) {//often be a AlreadyClosedException here
             logger.error("error happen when add document",ex);
             synchronized (this) {
@@ -244,6 +292,10 @@ public final class IndexClient implements Closeable {
                 }
             }
 
+        } finally {
+            if (sketch != null) {
+                sketch.finishDocument(indexed);
+            }
         }
     }
 
@@ -407,144 +459,554 @@ public final class IndexClient implements Closeable {
     }
 
     /**
-     * get current index's term-set(docId) map in the specified field between the specified DF range after the latest update
+     * get the document frequency histogram of the specified field after the latest update
+     * all the terms are enumerated only once, the postings wouldn't be read
+     * @param field
+     * @return
+     */
+    public DFHistogram getDFHistogram(String field) {
+        return getDFHistogram(field, Collections.emptyList());
+    }
+
+    /**
+     * get the document frequency histogram of the specified field after the latest update, excluding the specified terms
+     * @param field
+     * @param excludedTerms the terms which shouldn't be counted, such as the selected queries
+     * @return
+     */
+    public DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+        return getDFHistogram(indexReader, field, excludedTerms);
+    }
+
+    private DFHistogram getDFHistogram(IndexReader reader, String field, Collection<String> excludedTerms) {
+        if (reader == null) {
+            logger.warn("this indexReader hasn't been initialized");
+            return new DFHistogram(0);
+        }
+        if (useSketch(field)) {
+            return sketch.getHistogram(reader.numDocs(), excludedTerms);
+        }
+        DFHistogram histogram = new DFHistogram(reader.numDocs());
+        try {
+            Terms terms = MultiFields.getTerms(reader, field);
+            if (terms == null) return histogram;
+            TermsEnum termsEnum = terms.iterator();
+            while (termsEnum.next() != null) {
+                histogram.add(termsEnum.docFreq());
+            }
+            TermsEnum seeker = terms.iterator();
+            for (String term : new HashSet<>(excludedTerms)) {
+                if (seeker.seekExact(new BytesRef(term))) {
+                    histogram.remove(seeker.docFreq());
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("IOException in read lucene index", ex);
+        }
+        logger.trace("DF histogram of field {}: {}", field, histogram);
+        return histogram;
+    }
+
+    /**
+     * get current index's term-set(docId) matrix in the specified field between the specified DF range after the latest update
      * note: this method view the index as a entirety
      * @param field
      * @param low
      * @param up
      * @return
      */
-    public Map<String, Set<Integer>> getDocSetMap2(String field,double low,double up) {
+    public TermDocMatrix getDocSetMap2(String field,double low,double up) {
         logger.info("start to get doc set map");
         Utils.logMemorySize();
 
-        Map<String, Set<Integer>> docSetMap = new HashMap<>();
+        TermDocMatrix matrix = new TermDocMatrix();
         if (indexReader == null) {
             logger.warn("this indexReader hasn't been initialized");
-            return docSetMap;
+            return matrix;
         }
         int size = indexReader.numDocs();
         try{
             Terms terms = MultiFields.getTerms(indexReader, field);
+            if (terms == null) return matrix;
             TermsEnum termsEnum = terms.iterator();
             while (termsEnum.next() != null) {
-                String term = termsEnum.term().utf8ToString();
                 if((low * size) < termsEnum.docFreq() && termsEnum.docFreq() <= (up * size)) {
-                    //the current algorithm design wouldn't think about delete references in index, therefore don't prepare for deleting
-                    PostingsEnum postingsEnum = termsEnum.postings(null, PostingsEnum.NONE);
-                    int id = 0;
-                    Set<Integer> docSet = new HashSet<>();
-                    while ((id = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                        docSet.add(id);
-                    }
-                    docSetMap.put(term,docSet);
+                    matrix.setPostings(matrix.addTerm(termsEnum.term()), readPostings(termsEnum));
                 }
             }
         }catch (IOException ex){
             logger.error("IOException in read lucene index", ex);
         }
 
-        logger.info("map size is {}", docSetMap.size());
+        logger.info("map size is {}", matrix.size());
         Utils.logMemorySize();
         logger.info("get doc set map finish");
-        return docSetMap;
+        return matrix;
     }
 
     /**
-     * get current index's term-set(docId) map in the specified field between the specified DF range after the latest update
+     * get current index's term-set(docId) matrix in the specified field between the specified DF range after the latest update
      * note: this method view the index as a set of some sub index
      * @param field
      * @param low
      * @param up
      * @return
      */
-    public Map<String, Set<Integer>> getDocSetMap(String field,double low,double up) {
+    public TermDocMatrix getDocSetMap(String field,double low,double up) {
+        return getDocSetMap(indexReader, field, low, up);
+    }
+
+    private TermDocMatrix getDocSetMap(IndexReader topReader, String field,double low,double up) {
         logger.trace("start to get doc set map");
         Utils.logMemorySize();
 
-        if (indexReader == null) {
+        TermDocMatrix matrix = new TermDocMatrix();
+        if (topReader == null) {
             logger.warn("this indexReader hasn't been initialized");
-            return Collections.emptyMap();
+            return matrix;
         }
-        Map<String, Set<Integer>> docSetMap = new HashMap<>();
-        int size = indexReader.numDocs();
+        List<LeafReaderContext> leafList = topReader.leaves();
+        if (leafList.isEmpty()) {
+            return matrix;
+        }
+        int size = topReader.numDocs();
+        logger.trace("sub index size:{}", leafList.size());
+        AtomicInteger scanNum = new AtomicInteger(0);//the number of sub index which is scanned from scratch
+        LeafPostings[] leaves = getLeafTerms(leafList, field, scanNum);
 
         logger.trace("start to get all the terms which fit the target bound range");
-        try{
-            Terms terms = MultiFields.getTerms(indexReader, field);
-            if (terms == null) return Collections.emptyMap();
-            TermsEnum termsEnum = terms.iterator();
-            while (termsEnum.next() != null) {
-                String term = termsEnum.term().utf8ToString();
-                if((low * size) < termsEnum.docFreq() && termsEnum.docFreq() <= (up * size)) {
-                    docSetMap.put(term, new HashSet<>());
+        List<BytesRef> shortlist = useSketch(field) ? sketch.getCandidates(low * size, up * size) : null;
+        if (shortlist != null) {
+            //the shortlisted terms are in ascending order, so the term ID keeps the order of term
+            shortlist.forEach(matrix::addTerm);
+            logger.trace("shortlist {} terms from DF sketch", matrix.size());
+        } else {
+            selectTerms(leaves, low * size, up * size, matrix);
+        }
+        logger.trace("get terms finish");
+        if (matrix.size() == 0) {
+            return matrix;
+        }
+        //each term's docID set in every sub index, each sub index thread only write its own row
+        DocIdBitmap[][] leafSets = new DocIdBitmap[leafList.size()][];
+        forEachLeaf(leafList.size(), i -> leafSets[i] = getLeafPostings(leafList.get(i).reader(), leaves[i], matrix));
+        logger.trace("DF bound is between {} and {}", low * size, up * size);
+        logger.info("scan {} new sub indexes, reuse the cached postings of {} sub indexes", scanNum.get(), leafList.size() - scanNum.get());
+
+        //the sub indexes are ordered by docBase, so just concatenate the docID sets of each sub index
+        long ramBytes = 0;
+        for (int termID = 0; termID < matrix.size(); termID++) {
+            DocIdBitmap docSet;
+            if (leafSets.length == 1) {
+                docSet = leafSets[0] == null ? DocIdBitmap.empty() : leafSets[0][termID];
+            } else {
+                DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+                for (int i = 0; i < leafSets.length; i++) {
+                    if (leafSets[i] != null) {
+                        builder.addAll(leafSets[i][termID], leafList.get(i).docBase);
+                    }
                 }
+                docSet = builder.build();
             }
+            ramBytes += docSet.ramBytesUsed();
+            matrix.setPostings(termID, docSet);
+        }
+        logger.trace("the memory cost of doc set map is {} M", ramBytes / 1024.0 / 1024);
 
-        }catch (IOException ex){
-            logger.error("IOException in read lucene index", ex);
+        Utils.logMemorySize();
+        logger.trace("get doc set map finish");
+        return shortlist != null ? filterByDF(matrix, low * size, up * size) : matrix;
+    }
+
+    /**
+     * only keep the terms whose exact DF is in (low, up], because the shortlist of sketch is a superset of them
+     * @param matrix
+     * @param low
+     * @param up
+     * @return
+     */
+    private TermDocMatrix filterByDF(TermDocMatrix matrix, double low, double up) {
+        TermDocMatrix filtered = new TermDocMatrix();
+        BytesRef term = new BytesRef();
+        for (int termID = 0; termID < matrix.size(); termID++) {
+            DocIdBitmap docSet = matrix.getPostings(termID);
+            if (low < docSet.cardinality() && docSet.cardinality() <= up) {
+                filtered.setPostings(filtered.addTerm(matrix.getTerm(termID, term)), docSet);
+            }
         }
-        logger.trace("get terms finish");
-        if (docSetMap.size() == 0) {
-            return Collections.emptyMap();
+        logger.trace("{} of {} shortlisted terms fit the target bound range", filtered.size(), matrix.size());
+        return filtered;
+    }
+    /**
+     * get current index's term-set(docId) matrix in the specified field between the specified DF range after the latest update,
+     * the docID sets are streamed into a temporary file of the specified directory instead of heap,
+     * the caller must close the spilled postings of the returned matrix
+     * note: this method selects the terms by the cached term dictionaries of sub indexes, but doesn't cache the docID sets
+     * @param field
+     * @param low
+     * @param up
+     * @param dir
+     * @return
+     */
+    public TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+        return spillDocSetMap(indexReader, field, low, up, dir);
+    }
+
+    private TermDocMatrix spillDocSetMap(IndexReader topReader, String field, double low, double up, Path dir) throws IOException {
+        logger.trace("start to spill doc set map into {}", dir);
+        TermDocMatrix matrix = new TermDocMatrix();
+        try (SpilledPostings.Writer writer = new SpilledPostings.Writer(dir)) {
+            if (topReader == null) {
+                logger.warn("this indexReader hasn't been initialized");
+            } else if (!topReader.leaves().isEmpty()) {
+                List<LeafReaderContext> leafList = topReader.leaves();
+                int size = topReader.numDocs();
+                //with the sketch, only the shortlisted terms are sought, otherwise the terms are selected from the term dictionaries of sub indexes
+                List<BytesRef> shortlist = useSketch(field) ? sketch.getCandidates(low * size, up * size) : null;
+                TermDocMatrix candidates = new TermDocMatrix();
+                if (shortlist != null) {
+                    shortlist.forEach(candidates::addTerm);
+                } else {
+                    selectTerms(getLeafTerms(leafList, field, new AtomicInteger(0)), low * size, up * size, candidates);
+                }
+                TermsEnum[] termsEnums = new TermsEnum[leafList.size()];
+                for (int i = 0; i < leafList.size(); i++) {
+                    Terms terms = leafList.get(i).reader().terms(field);
+                    termsEnums[i] = terms == null ? TermsEnum.EMPTY : terms.iterator();
+                }
+                boolean[] found = new boolean[leafList.size()];
+                PostingsEnum postingsEnum = null;
+                BytesRef term = new BytesRef();
+                for (int termID = 0; termID < candidates.size(); termID++) {
+                    candidates.getTerm(termID, term);
+                    int df = 0;
+                    for (int i = 0; i < leafList.size(); i++) {
+                        found[i] = termsEnums[i].seekExact(term);
+                        df += found[i] ? termsEnums[i].docFreq() : 0;
+                    }
+                    if (df <= (low * size) || (up * size) < df) continue;
+                    //the candidates are in ascending order, so the term ID keeps the order of term
+                    matrix.addTerm(term);
+                    writer.startTerm();
+                    //the sub indexes are ordered by docBase, so the global docIDs come in ascending order
+                    for (int i = 0; i < leafList.size(); i++) {
+                        if (!found[i]) continue;
+                        int docBase = leafList.get(i).docBase;
+                        postingsEnum = termsEnums[i].postings(postingsEnum, PostingsEnum.NONE);
+                        int id;
+                        while ((id = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                            writer.add(docBase + id);
+                        }
+                    }
+                }
+            }
+            matrix.setSpilledPostings(writer.finish());
         }
-        ExecutorService service = Executors.newFixedThreadPool(indexReader.leaves().size());//thread pool to operate the sub index
-        List<LeafReaderContext> leafList = indexReader.leaves();
-        logger.trace("sub index size:{}", leafList.size());
+        logger.info("spill {} terms' doc set into file", matrix.size());
+        return matrix;
+    }
+
+    /**
+     * get the term dictionary of each sub index, the cached ones are reused, the others are read in parallel
+     * @param leafList
+     * @param field
+     * @param scanNum the counter of sub index scanned from scratch
+     * @return indexed by the order of sub index, the sub index failed to read has an empty dictionary
+     */
+    private LeafPostings[] getLeafTerms(List<LeafReaderContext> leafList, String field, AtomicInteger scanNum) {
+        LeafPostings[] leaves = new LeafPostings[leafList.size()];
+        forEachLeaf(leafList.size(), i -> {
+            LeafReader reader = leafList.get(i).reader();
+            Object key = reader.getCoreCacheKey();
+            LeafPostings cached = postingsCache.get(key);
+            if (cached != null && cached.getField().equals(field)) {
+                leaves[i] = cached;
+                return;
+            }
+            scanNum.incrementAndGet();
+            if (cached == null) {
+                reader.addCoreClosedListener(ownerCoreCacheKey -> postingsCache.remove(ownerCoreCacheKey));
+            }
+            leaves[i] = LeafPostings.read(reader, field);
+            postingsCache.put(key, leaves[i]);
+        });
+        for (int i = 0; i < leaves.length; i++) {
+            if (leaves[i] == null) {
+                leaves[i] = LeafPostings.empty(field);
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * merge the ascending term dictionaries of sub indexes, and add the terms whose DF is in (lowDF, upDF] into the matrix,
+     * the DF of a term is the sum of its local DF in each sub index
+     * @param leaves
+     * @param lowDF
+     * @param upDF
+     * @param matrix
+     */
+    private void selectTerms(LeafPostings[] leaves, double lowDF, double upDF, TermDocMatrix matrix) {
+        PriorityQueue<LeafPostings.Cursor> queue = new PriorityQueue<>(Math.max(leaves.length, 1));
+        for (LeafPostings leaf : leaves) {
+            LeafPostings.Cursor cursor = new LeafPostings.Cursor(leaf);
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+        BytesRefBuilder term = new BytesRefBuilder();
+        while (!queue.isEmpty()) {
+            term.copyBytes(queue.peek().term());
+            int df = 0;
+            while (!queue.isEmpty() && queue.peek().term().bytesEquals(term.get())) {
+                LeafPostings.Cursor cursor = queue.poll();
+                df += cursor.docFreq();
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            if (lowDF < df && df <= upDF) {
+                //the terms come in ascending order, so the term ID keeps the order of term
+                matrix.addTerm(term.get());
+            }
+        }
+    }
+
+    /**
+     * run the task on each sub index in parallel and wait for them
+     * @param leafNum
+     * @param task
+     */
+    private void forEachLeaf(int leafNum, LeafTask task) {
+        ExecutorService service = Executors.newFixedThreadPool(leafNum);//thread pool to operate the sub index
         List<Future> futureList = new ArrayList<>();
-        for (int i = 0 ; i < leafList.size() ; i ++) {
+        for (int i = 0 ; i < leafNum ; i ++) {
             int curIndex = i;
             futureList.add(service.submit(() -> {
-                LeafReaderContext ct = leafList.get(curIndex);
-                LeafReader reader = ct.reader();
                 try {
-                    Terms terms = reader.fields().terms(field);
-                    TermsEnum termsEnum = terms.iterator();
-                    while (termsEnum.next() != null) {
-                        String term = termsEnum.term().utf8ToString();
-
-                        //if the DF of current term is not between the target bound range
-                        if (!docSetMap.containsKey(term)) {
-                            continue;
-                        }
-
-                        PostingsEnum postingsEnum = termsEnum.postings(null, PostingsEnum.NONE);
-                        int id = 0;
-                        Set<Integer> tmpSet = new HashSet<>();
-                        while ((id = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-                            tmpSet.add(id);
-                        }
-                        Set<Integer> docSet = docSetMap.get(term);
-                        synchronized (docSet) {
-                            docSet.addAll(tmpSet);
-                        }
-                    }
+                    task.run(curIndex);
                 } catch (IOException ex) {
                     logger.error("IOException happen when read from sub index reader", ex);
                 }
-
-                return;
             }));
         }
         service.shutdown();
-        logger.trace("DF bound is between {} and {}", low * size, up * size);
-        while (futureList.size() > 0) {
-            for (int i = 0 ; i < futureList.size() ;) {
-                Future<Map<String, Set<Integer>>> f = futureList.get(i);
-                if (f.isDone()) {
-                    futureList.remove(i);
-                    Utils.logMemorySize();
-                    logger.trace("least size of the list of future is {}", futureList.size());
-                    continue;
+        for (Future f : futureList) {
+            try {
+                f.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.error("error happen when wait for sub index thread", ex);
+            }
+        }
+        Utils.logMemorySize();
+    }
+
+    private interface LeafTask {
+        void run(int leafIndex) throws IOException;
+    }
+
+    /**
+     * get the local docID sets of the candidate terms in a sub index,
+     * the terms which don't occur in the term dictionary of this sub index are skipped without seeking,
+     * the candidate terms cached in this sub index are reused, the others are read by seeking,
+     * then the cache of this sub index is replaced by the candidate terms of this extraction
+     * @param reader the sub index reader
+     * @param leaf the cached term dictionary of the sub index
+     * @param candidates the target terms in ascending order, only the term dictionary would be used
+     * @return the local docID sets indexed by the term ID of candidates
+     */
+    private DocIdBitmap[] getLeafPostings(LeafReader reader, LeafPostings leaf, TermDocMatrix candidates) throws IOException {
+        int[] leafIDs = leaf.join(candidates);
+        DocIdBitmap[] leafPostings = new DocIdBitmap[candidates.size()];
+        DocIdBitmap[] cached = new DocIdBitmap[leaf.size()];
+        TermsEnum termsEnum = null;
+        BytesRef term = new BytesRef();
+        for (int termID = 0; termID < candidates.size(); termID++) {
+            int leafID = leafIDs[termID];
+            if (leafID < 0) {
+                leafPostings[termID] = DocIdBitmap.empty();
+                continue;
+            }
+            DocIdBitmap docSet = leaf.getPostings(leafID);
+            if (docSet == null) {
+                if (termsEnum == null) {
+                    termsEnum = reader.terms(leaf.getField()).iterator();
                 }
-                i ++;
+                termsEnum.seekExact(leaf.getTerm(leafID, term));
+                docSet = readPostings(termsEnum);
             }
+            leafPostings[termID] = docSet;
+            cached[leafID] = docSet;
         }
+        //only keep the candidate terms of the latest extraction, the others may never be used
+        postingsCache.put(reader.getCoreCacheKey(), leaf.withPostings(cached));
+        return leafPostings;
+    }
 
-        Utils.logMemorySize();
-        logger.trace("get doc set map finish");
-        return docSetMap;
+    /**
+     * read the local docID set of current term in the terms enum
+     * the current algorithm design wouldn't think about delete references in index, therefore don't prepare for deleting
+     * @param termsEnum
+     * @return
+     */
+    private DocIdBitmap readPostings(TermsEnum termsEnum) throws IOException {
+        PostingsEnum postingsEnum = termsEnum.postings(null, PostingsEnum.NONE);
+        int id = 0;
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        while ((id = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            builder.add(id);
+        }
+        return builder.build();
     }
+
+    /**
+     * visit the terms of the sub indexes which haven't been visited after the latest update,
+     * so the terms of newly indexed documents can be collected without scanning the whole index
+     * @param field
+     * @param visited the core cache keys of the visited sub indexes, this method would add the new ones into it
+     * @param visitor accept each term of the new sub indexes
+     */
+    public void visitNewTerms(String field, Set<Object> visited, TermVisitor visitor) {
+        visitNewTerms(indexReader, field, visited, visitor);
+    }
+
+    private void visitNewTerms(IndexReader topReader, String field, Set<Object> visited, TermVisitor visitor) {
+        if (topReader == null) {
+            logger.warn("this indexReader hasn't been initialized");
+            return;
+        }
+        int newNum = 0;
+        for (LeafReaderContext context : topReader.leaves()) {
+            LeafReader reader = context.reader();
+            if (!visited.add(reader.getCoreCacheKey())) continue;
+            newNum++;
+            Boolean merged = isMerged(reader);
+            try {
+                Terms terms = reader.terms(field);
+                if (terms == null) continue;
+                TermsEnum termsEnum = terms.iterator();
+                BytesRef term;
+                while ((term = termsEnum.next()) != null) {
+                    visitor.visit(term, termsEnum.docFreq(), merged);
+                }
+            } catch (IOException ex) {
+                logger.error("IOException happen when read from sub index reader", ex);
+            }
+        }
+        logger.trace("visit the terms of {} new sub indexes", newNum);
+    }
+
+    /**
+     * judge whether the sub index is merged from other sub indexes or flushed from newly added documents
+     * @param reader
+     * @return null if unknown
+     */
+    private static Boolean isMerged(LeafReader reader) {
+        if (!(reader instanceof SegmentReader)) {
+            return null;
+        }
+        String source = ((SegmentReader) reader).getSegmentInfo().info.getDiagnostics().get(IndexWriter.SOURCE);
+        if (IndexWriter.SOURCE_MERGE.equals(source)) {
+            return true;
+        }
+        return IndexWriter.SOURCE_FLUSH.equals(source) ? false : null;
+    }
+
+    /**
+     * get the document frequency of the specified term after the latest update
+     * @param field
+     * @param term
+     * @return
+     */
+    public int getDocFreq(String field, BytesRef term) {
+        return getDocFreq(indexReader, field, term);
+    }
+
+    private int getDocFreq(IndexReader reader, String field, BytesRef term) {
+        if (reader == null) {
+            logger.warn("this indexReader hasn't been initialized");
+            return 0;
+        }
+        try {
+            return reader.docFreq(new Term(field, term));
+        } catch (IOException ex) {
+            logger.error("IOException in read lucene index", ex);
+            return 0;
+        }
+    }
+
+    /**
+     * the visitor of the terms in the new sub indexes
+     */
+    public interface TermVisitor {
+        /**
+         * @param term would be reused after this method returns
+         * @param leafDF the DF of the term in the sub index
+         * @param merged whether the sub index is merged from other sub indexes, whose documents may have been visited, null if unknown
+         */
+        void visit(BytesRef term, int leafDF, Boolean merged);
+    }
+
+    /**
+     * open a point-in-time snapshot of current index, it contains all the added documents even if they haven't been committed,
+     * the snapshot wouldn't change when the index is updated, so it can be read in background,
+     * the caller must close the snapshot after using it
+     * @return null if the index has no data
+     */
+    public synchronized Snapshot openSnapshot() {
+        try {
+            if (!readOnly && indexWriter != null) {
+                return new Snapshot(DirectoryReader.open(indexWriter));
+            }
+            if (indexReader != null) {
+                indexReader.incRef();
+                return new Snapshot(indexReader);
+            }
+        } catch (IOException ex) {
+            logger.error("IOException happen when open index snapshot", ex);
+        }
+        return null;
+    }
+
+    /**
+     * a point-in-time view of the index, which provides the same statistics and extraction methods of IndexClient
+     */
+    public final class Snapshot implements Closeable {
+        private final IndexReader reader;
+        private Snapshot(IndexReader reader) {
+            this.reader = reader;
+        }
+
+        public int getDocSize() {
+            return reader.numDocs();
+        }
+
+        public DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+            return IndexClient.this.getDFHistogram(reader, field, excludedTerms);
+        }
+
+        public TermDocMatrix getDocSetMap(String field, double low, double up) {
+            return IndexClient.this.getDocSetMap(reader, field, low, up);
+        }
+
+        public TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+            return IndexClient.this.spillDocSetMap(reader, field, low, up, dir);
+        }
+
+        public void visitNewTerms(String field, Set<Object> visited, TermVisitor visitor) {
+            IndexClient.this.visitNewTerms(reader, field, visited, visitor);
+        }
+
+        public int getDocFreq(String field, BytesRef term) {
+            return IndexClient.this.getDocFreq(reader, field, term);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.decRef();
+        }
+    }
+
     /**
      * get the metadata information of current index
      * @return size/fields/leaves
@@ -629,6 +1091,9 @@ public final class IndexClient implements Closeable {
         private boolean readOnly;
         private int searchThreadNum;
         private int maxHitNum;
+        private String sketchField;
+        private int sketchWidth = 1 << 18;
+        private int sketchCapacity = 50000;
         public Builder(Path addr){
             sampleAddr = addr;
         }
@@ -672,6 +1137,27 @@ public final class IndexClient implements Closeable {
             return this;
         }
 
+        /**
+         * maintain the approximate DF of the specified field when adding documents,
+         * then the candidate terms of this field are shortlisted by the sketch instead of enumerating the whole term dictionary
+         * @param field
+         */
+        public Builder setDFSketch(String field) {
+            this.sketchField = field;
+            return this;
+        }
+
+        /**
+         * set the size of DF sketch
+         * @param width the counter number of each hash function, must be a power of 2
+         * @param capacity the number of terms whose DF is tracked
+         */
+        public Builder setDFSketchSize(int width, int capacity) {
+            this.sketchWidth = width;
+            this.sketchCapacity = capacity;
+            return this;
+        }
+
         public IndexClient build(){
             if (analyzer == null) {
                 analyzer = new StandardAnalyzer();
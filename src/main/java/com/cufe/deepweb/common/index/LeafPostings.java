@@ -0,0 +1,165 @@
+package com.cufe.deepweb.common.index;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+import java.io.IOException;
+
+/**
+ * the cached data of a field in a sub index: the term dictionary with each term's local DF,
+ * and the local docID sets of the candidate terms in the latest extraction,
+ * the term ID of the dictionary is the leaf term ID, the terms are added in ascending order, so the order of leaf term ID is the order of term
+ * a sub index's postings never change once it's written, so the dictionary is read only once in its lifetime,
+ * an instance is never modified after it's built, so it can be read by several extractions at the same time
+ */
+final class LeafPostings {
+    private final String field;
+    private final BytesRefHash dict;
+    private final int[] docFreqs;
+    /**
+     * the local docID set of each term, indexed by leaf term ID, null if the term isn't cached
+     */
+    private final DocIdBitmap[] postings;
+
+    private LeafPostings(String field, BytesRefHash dict, int[] docFreqs, DocIdBitmap[] postings) {
+        this.field = field;
+        this.dict = dict;
+        this.docFreqs = docFreqs;
+        this.postings = postings;
+    }
+
+    /**
+     * read the term dictionary of the field in the sub index, no docID set is cached
+     * @param reader
+     * @param field
+     * @return
+     */
+    static LeafPostings read(LeafReader reader, String field) throws IOException {
+        BytesRefHash dict = new BytesRefHash();
+        int[] docFreqs = new int[16];
+        Terms terms = reader.terms(field);
+        if (terms != null) {
+            TermsEnum termsEnum = terms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                int id = dict.add(term);
+                docFreqs = ArrayUtil.grow(docFreqs, id + 1);
+                docFreqs[id] = termsEnum.docFreq();
+            }
+        }
+        return new LeafPostings(field, dict, docFreqs, new DocIdBitmap[dict.size()]);
+    }
+
+    /**
+     * @param field
+     * @return the empty dictionary
+     */
+    static LeafPostings empty(String field) {
+        return new LeafPostings(field, new BytesRefHash(), new int[0], new DocIdBitmap[0]);
+    }
+
+    /**
+     * share the term dictionary with this one, but cache the specified docID sets
+     * @param postings indexed by leaf term ID
+     * @return
+     */
+    LeafPostings withPostings(DocIdBitmap[] postings) {
+        return new LeafPostings(field, dict, docFreqs, postings);
+    }
+
+    String getField() {
+        return field;
+    }
+
+    /**
+     * the number of terms in the dictionary
+     * @return
+     */
+    int size() {
+        return dict.size();
+    }
+
+    /**
+     * @param leafTermID
+     * @param spare the BytesRef to fill
+     * @return
+     */
+    BytesRef getTerm(int leafTermID, BytesRef spare) {
+        return dict.get(leafTermID, spare);
+    }
+
+    int getDocFreq(int leafTermID) {
+        return docFreqs[leafTermID];
+    }
+
+    /**
+     * @param leafTermID
+     * @return null if the docID set of the term isn't cached
+     */
+    DocIdBitmap getPostings(int leafTermID) {
+        return postings[leafTermID];
+    }
+
+    /**
+     * map each term of the matrix to its leaf term ID by merging the two ascending term lists, so no hash lookup is needed
+     * @param matrix whose terms are in ascending order
+     * @return the leaf term ID indexed by the term ID of matrix, -1 if the term doesn't occur in this sub index
+     */
+    int[] join(TermDocMatrix matrix) {
+        int[] leafIDs = new int[matrix.size()];
+        BytesRef term = new BytesRef();
+        BytesRef leafTerm = new BytesRef();
+        int leafID = 0;
+        for (int termID = 0; termID < matrix.size(); termID++) {
+            matrix.getTerm(termID, term);
+            int cmp = -1;
+            while (leafID < size() && (cmp = getTerm(leafID, leafTerm).compareTo(term)) < 0) {
+                leafID++;
+            }
+            leafIDs[termID] = leafID < size() && cmp == 0 ? leafID : -1;
+        }
+        return leafIDs;
+    }
+
+    /**
+     * the cursor on the ascending term dictionary, used to merge the dictionaries of sub indexes
+     */
+    static final class Cursor implements Comparable<Cursor> {
+        private final LeafPostings leaf;
+        private final BytesRef term = new BytesRef();
+        private int leafTermID = -1;
+
+        Cursor(LeafPostings leaf) {
+            this.leaf = leaf;
+        }
+
+        /**
+         * move to the next term
+         * @return false if no more term
+         */
+        boolean next() {
+            if (++leafTermID >= leaf.size()) {
+                return false;
+            }
+            leaf.getTerm(leafTermID, term);
+            return true;
+        }
+
+        BytesRef term() {
+            return term;
+        }
+
+        int docFreq() {
+            return leaf.getDocFreq(leafTermID);
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            return term.compareTo(o.term);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.cufe.deepweb.common.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * fixed size bit set stored in direct memory, so it doesn't take the heap space,
+ * it's used as the coverage state of out-of-core set covering
+ * this class is not thread-safe
+ */
+public final class OffHeapBitSet {
+    private final LongBuffer words;
+    private final int numBits;
+
+    public OffHeapBitSet(int numBits) {
+        this.numBits = numBits;
+        int wordNum = (numBits + 63) >>> 6;
+        //the content of a new direct buffer is zero
+        words = ByteBuffer.allocateDirect(wordNum * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    public int length() {
+        return numBits;
+    }
+
+    public boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * set the bit and return its previous value
+     * @param index
+     * @return
+     */
+    public boolean getAndSet(int index) {
+        int wordNum = index >>> 6;
+        long mask = 1L << index;
+        long word = words.get(wordNum);
+        words.put(wordNum, word | mask);
+        return (word & mask) != 0;
+    }
+}
@@ -0,0 +1,182 @@
+package com.cufe.deepweb.common.index;
+
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * the docID sets of the terms spilled into a temporary file, ordered by term ID,
+ * each docID set is stored as delta encoded vInts, and read back through a memory-mapped input,
+ * only the file offset and the size of each docID set are kept in heap
+ * the file is deleted when this object is closed
+ * this class is not thread-safe
+ */
+public final class SpilledPostings implements Closeable {
+    private final Directory directory;
+    private final String fileName;
+    private final IndexInput input;
+    /**
+     * the start offset of each term's docID set in the file, indexed by term ID
+     */
+    private final long[] offsets;
+    private final int[] df;
+    private final int size;
+    /**
+     * the biggest docID in all the sets plus one
+     */
+    private final int length;
+
+    private SpilledPostings(Directory directory, String fileName, long[] offsets, int[] df, int size, int length) throws IOException {
+        this.directory = directory;
+        this.fileName = fileName;
+        this.offsets = offsets;
+        this.df = df;
+        this.size = size;
+        this.length = length;
+        this.input = directory.openInput(fileName, IOContext.DEFAULT);
+    }
+
+    /**
+     * the number of terms
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * the size of the specified term's docID set
+     * @param termID
+     * @return
+     */
+    public int cardinality(int termID) {
+        return df[termID];
+    }
+
+    /**
+     * compute the number of docIDs in the specified term's docID set but not in the covered bit set
+     * @param termID
+     * @param covered
+     * @return
+     */
+    public int andNotCardinality(int termID, OffHeapBitSet covered) throws IOException {
+        int count = 0;
+        input.seek(offsets[termID]);
+        int doc = 0;
+        for (int i = 0; i < df[termID]; i++) {
+            doc += input.readVInt();
+            if (doc >= covered.length() || !covered.get(doc)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * visit all the docIDs of the specified term in ascending order
+     * @param termID
+     * @param consumer
+     */
+    public void forEach(int termID, IntConsumer consumer) throws IOException {
+        input.seek(offsets[termID]);
+        int doc = 0;
+        for (int i = 0; i < df[termID]; i++) {
+            doc += input.readVInt();
+            consumer.accept(doc);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            IOUtils.close(input);
+        } finally {
+            IOUtils.deleteFilesIgnoringExceptions(directory, fileName);
+            directory.close();
+        }
+    }
+
+    /**
+     * the writer to spill the docID sets, the terms must be written in the order of term ID,
+     * and the docIDs of a term must be added in ascending order
+     */
+    public static final class Writer implements Closeable {
+        private final Directory directory;
+        private final IndexOutput output;
+        private long[] offsets = new long[16];
+        private int[] df = new int[16];
+        private int size = 0;
+        private int length = 0;
+        private int lastDoc;
+        private boolean finished = false;
+
+        /**
+         * @param dir the directory to store the temporary file
+         */
+        public Writer(Path dir) throws IOException {
+            directory = new MMapDirectory(dir);
+            output = directory.createTempOutput("postings", "spill", IOContext.DEFAULT);
+        }
+
+        /**
+         * start to write the docID set of next term
+         * @return the term ID
+         */
+        public int startTerm() {
+            if (size == offsets.length) {
+                int newSize = ArrayUtil.oversize(size + 1, Long.BYTES);
+                offsets = Arrays.copyOf(offsets, newSize);
+                df = Arrays.copyOf(df, newSize);
+            }
+            offsets[size] = output.getFilePointer();
+            lastDoc = 0;
+            return size++;
+        }
+
+        public void add(int doc) throws IOException {
+            int termID = size - 1;
+            if (df[termID] > 0 && doc <= lastDoc) {
+                throw new IllegalArgumentException("docIDs must be added in ascending order, " + doc + " after " + lastDoc);
+            }
+            output.writeVInt(doc - lastDoc);
+            df[termID]++;
+            lastDoc = doc;
+            length = Math.max(length, doc + 1);
+        }
+
+        /**
+         * finish writing and map the file for reading
+         * @return
+         */
+        public SpilledPostings finish() throws IOException {
+            output.close();
+            finished = true;
+            return new SpilledPostings(directory, output.getName(), offsets, df, size, length);
+        }
+
+        /**
+         * if the writer hasn't finished, delete the temporary file
+         */
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                try {
+                    IOUtils.close(output);
+                } finally {
+                    IOUtils.deleteFilesIgnoringExceptions(directory, output.getName());
+                    directory.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.cufe.deepweb.common.index;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * the term-set(docID) matrix of set covering, each term is mapped to a dense int term ID once,
+ * then all the data of a term can be stored in primitive arrays indexed by the term ID,
+ * the term is kept as bytes in the dictionary, and only be turned into a String when it's really used
+ * the terms should be added in ascending order, so the order of term ID is the order of term
+ * in out-of-core mode, the docID sets are spilled into a file, and only the term dictionary is kept in heap
+ */
+public final class TermDocMatrix {
+    /**
+     * the term dictionary, BytesRef to dense term ID
+     */
+    private final BytesRefHash dict;
+    /**
+     * the docID set of each term, indexed by term ID
+     */
+    private DocIdBitmap[] postings;
+    /**
+     * the docID sets spilled into file, null if the docID sets are in heap
+     */
+    private SpilledPostings spilled;
+
+    public TermDocMatrix() {
+        dict = new BytesRefHash();
+        postings = new DocIdBitmap[0];
+    }
+
+    /**
+     * add a term into the dictionary
+     * @param term
+     * @return the term ID, if the term has existed, return its term ID
+     */
+    public int addTerm(BytesRef term) {
+        int id = dict.add(term);
+        if (id < 0) {
+            return -id - 1;
+        }
+        if (id >= postings.length) {
+            postings = Arrays.copyOf(postings, ArrayUtil.oversize(id + 1, 8));
+        }
+        postings[id] = DocIdBitmap.empty();
+        return id;
+    }
+
+    /**
+     * set the docID set of the specified term
+     * different threads can set different terms' docID set at the same time
+     * @param termID
+     * @param docSet
+     */
+    public void setPostings(int termID, DocIdBitmap docSet) {
+        postings[termID] = docSet;
+    }
+
+    /**
+     * the number of terms
+     * @return
+     */
+    public int size() {
+        return dict.size();
+    }
+
+    /**
+     * get the term ID of the specified term, this method is not thread-safe
+     * @param term
+     * @return -1 if the term is not in the matrix
+     */
+    public int find(BytesRef term) {
+        return dict.find(term);
+    }
+
+    /**
+     * get the bytes of the specified term, this method is thread-safe as long as no term is added
+     * @param termID
+     * @param spare the BytesRef to fill
+     * @return
+     */
+    public BytesRef getTerm(int termID, BytesRef spare) {
+        return dict.get(termID, spare);
+    }
+
+    /**
+     * materialize the specified term as a String
+     * @param termID
+     * @return
+     */
+    public String getTermString(int termID) {
+        return dict.get(termID, new BytesRef()).utf8ToString();
+    }
+
+    public DocIdBitmap getPostings(int termID) {
+        return postings[termID];
+    }
+
+    /**
+     * set the docID sets spilled into file, the term ID in it must be the same as this matrix
+     * @param spilled
+     */
+    public void setSpilledPostings(SpilledPostings spilled) {
+        this.spilled = spilled;
+    }
+
+    public SpilledPostings getSpilledPostings() {
+        return spilled;
+    }
+
+    public boolean isSpilled() {
+        return spilled != null;
+    }
+
+    /**
+     * copy the term dictionary and spill the docID sets in heap into a temporary file of the specified directory
+     * @param dir
+     * @return the new matrix whose docID sets are spilled
+     */
+    public TermDocMatrix spill(Path dir) throws IOException {
+        TermDocMatrix matrix = new TermDocMatrix();
+        BytesRef term = new BytesRef();
+        try (SpilledPostings.Writer writer = new SpilledPostings.Writer(dir)) {
+            for (int termID = 0; termID < size(); termID++) {
+                matrix.addTerm(getTerm(termID, term));
+                writer.startTerm();
+                postings[termID].forEach(doc -> {
+                    try {
+                        writer.add(doc);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+            matrix.setSpilledPostings(writer.finish());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return matrix;
+    }
+}
@@ -60,6 +60,12 @@ public class ExtraConf {
      */
     private Integer databaseSize;
 
+    /**
+     * the syntax of a conjunctive query on the site, "%s" is the placeholder of a term, such as "+%s +%s" or "%s AND %s",
+     * if it's empty, only single-term queries are sent
+     */
+    private String conjunctionSyntax;
+
     public long getId() {
         return id;
     }
@@ -155,4 +161,12 @@ public class ExtraConf {
     public void setDatabaseSize(Integer databaseSize) {
         this.databaseSize = databaseSize;
     }
+
+    public String getConjunctionSyntax() {
+        return conjunctionSyntax;
+    }
+
+    public void setConjunctionSyntax(String conjunctionSyntax) {
+        this.conjunctionSyntax = conjunctionSyntax;
+    }
 }
@@ -47,6 +47,45 @@ public class UrlBaseConf {
      */
     private String infoLinkXpath;
 
+    /**
+     * the xpath of the element showing the total result number in the first result page, this parameter can be empty
+     */
+    private String totalXpath;
+    /**
+     * the regex to extract the total result number from the text of totalXpath (or the whole page if totalXpath is empty),
+     * the first group is used if exists, this parameter can be empty
+     * if both totalXpath and totalRegex are empty, the total page number is detected by probing the page number
+     */
+    private String totalRegex;
+    /**
+     * the result number in a result page, if it's empty, the info link number of the first result page is used
+     */
+    private Integer pageSize;
+
+    public String getTotalXpath() {
+        return totalXpath;
+    }
+
+    public void setTotalXpath(String totalXpath) {
+        this.totalXpath = totalXpath;
+    }
+
+    public String getTotalRegex() {
+        return totalRegex;
+    }
+
+    public void setTotalRegex(String totalRegex) {
+        this.totalRegex = totalRegex;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
     public long getId() {
         return id;
     }
@@ -2,6 +2,7 @@ package com.cufe.deepweb.crawler;
 
 import com.cufe.deepweb.common.orm.model.*;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -15,6 +16,61 @@ public final class Constant {
      */
     public static int ALL_IN_NUM = 0;
 
+    /**
+     * the directory to spill the set covering matrix, the default null indicates that the matrix is kept in heap
+     */
+    public static String SPILL_DIR = null;
+
+    /**
+     * whether to use the bandit algorithm instead of set covering
+     */
+    public static boolean BANDIT = false;
+
+    /**
+     * whether to shortlist the candidate terms of set covering by the DF sketch maintained when indexing
+     */
+    public static boolean DF_SKETCH = false;
+
+    /**
+     * the number of posting intersections computed in a turn for conjunctive queries, 0 indicates only single-term queries
+     */
+    public static int PAIR_BUDGET = 0;
+
+    /**
+     * the number of queries in flight at the same time in a round, the default 1 indicates one query per round
+     */
+    public static int BATCH_SIZE = 1;
+
+    /**
+     * whether to infer the next query while the current round is downloading
+     */
+    public static boolean PIPELINE = false;
+
+    /**
+     * stop paging a query when the new link ratio of its latest result pages is lower than this value, the default 0 indicates never stop
+     */
+    public static double YIELD_THRESHOLD = 0;
+
+    /**
+     * whether to download the result pages while detecting the end of a query, instead of confirming the total page number first
+     */
+    public static boolean STREAMING = false;
+
+    /**
+     * the max size in MB of the query page cache in a round, the default 0 indicates no cache
+     */
+    public static int PAGE_CACHE_SIZE = 0;
+
+    /**
+     * whether to fetch the URL based query pages by the HTTP client when their static HTML contains the info links
+     */
+    public static boolean STATIC_FETCH = false;
+
+    /**
+     * the hosts whose requests are blocked in the browser, such as the third-party analytics of the crawled website
+     */
+    public static Set<String> BLOCKED_HOSTS = Collections.emptySet();
+
     /**
      * the basic configuration of website
      */
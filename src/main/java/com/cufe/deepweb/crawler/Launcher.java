@@ -2,12 +2,16 @@ package com.cufe.deepweb.crawler;
 
 import com.cufe.deepweb.algorithm.AlgorithmBase;
 import com.cufe.deepweb.algorithm.AllInAlgorithm;
+import com.cufe.deepweb.algorithm.BanditAlgorithm;
+import com.cufe.deepweb.algorithm.CostModel;
 import com.cufe.deepweb.algorithm.LinearIncrementalAlgorithm;
+import com.cufe.deepweb.algorithm.SetCoverAlgorithm;
 import com.cufe.deepweb.common.dedu.RAMStrDedutor;
 import com.cufe.deepweb.common.orm.model.*;
 import com.cufe.deepweb.crawler.branch.ApiBaseScheduler;
 import com.cufe.deepweb.crawler.branch.JsonBaseScheduler;
 import com.cufe.deepweb.crawler.branch.Scheduler;
+import com.cufe.deepweb.common.http.PageCache;
 import com.cufe.deepweb.common.http.client.ApacheClient;
 import com.cufe.deepweb.common.http.client.CusHttpClient;
 import com.cufe.deepweb.common.http.simulate.HtmlUnitBrowser;
@@ -20,6 +24,7 @@ import com.cufe.deepweb.common.orm.Orm;
 import com.cufe.deepweb.crawler.service.infos.info.Info;
 import com.cufe.deepweb.crawler.service.querys.ApiBaseQueryLinkService;
 import com.cufe.deepweb.crawler.service.querys.JsonBaseQueryLinkService;
+import com.cufe.deepweb.crawler.service.querys.QueryLinkService;
 import com.cufe.deepweb.crawler.service.querys.UrlBaseQueryLinkService;
 import com.gargoylesoftware.htmlunit.CookieManager;
 import com.gargoylesoftware.htmlunit.util.Cookie;
@@ -39,8 +44,10 @@ import java.io.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 /**
  * the launcher class of crawler
@@ -90,26 +97,35 @@ public final class Launcher {
         //initialize the service to deal with infoLinks
         InfoLinkService infoLinkService = new InfoLinkService(httpClient, indexClient);
 
-        Scheduler scheduler;
+        Scheduler<?> scheduler;
+        QueryLinkService queryLinkService;
         //initialize the service to deal with queryLinks
         //initialize the scheduler thread
         if (Constant.urlBaseConf != null) {
             logger.info("prepare urlBaseScheduler");
-            UrlBaseQueryLinkService urlBaseQueryLinkService = new UrlBaseQueryLinkService(webBrowser, dedu);
+            UrlBaseQueryLinkService urlBaseQueryLinkService = Constant.STATIC_FETCH ?
+                    new UrlBaseQueryLinkService(webBrowser, dedu, httpClient) : new UrlBaseQueryLinkService(webBrowser, dedu);
             scheduler = new UrlBaseScheduler(alg, urlBaseQueryLinkService, infoLinkService, msgQueue);
+            queryLinkService = urlBaseQueryLinkService;
         } else if (Constant.apiBaseConf != null) {
             logger.info("prepare apiBaseScheduler");
             ApiBaseQueryLinkService apiBaseQueryLinkService = new ApiBaseQueryLinkService(webBrowser, dedu);
             scheduler = new ApiBaseScheduler(alg, apiBaseQueryLinkService, infoLinkService);
+            queryLinkService = apiBaseQueryLinkService;
         } else if (Constant.jsonBaseConf != null) {
             logger.info("prepare jsonBaseScheduler");
             JsonBaseQueryLinkService jsonBaseQueryLinkService = new JsonBaseQueryLinkService(webBrowser, dedu, httpClient);
             scheduler = new JsonBaseScheduler(alg, jsonBaseQueryLinkService, infoLinkService, msgQueue);
+            queryLinkService = jsonBaseQueryLinkService;
         } else {
             logger.error("can't judge to use which scheduler, exit");
             System.exit(1);
             return;
         }
+        //the conjunctive queries are verified on the target site before being selected
+        if (alg instanceof SetCoverAlgorithm) {
+            ((SetCoverAlgorithm) alg).setPageNumProbe(queryLinkService::probePageNum);
+        }
 
         //when scheduler thread start to run, everything startup
         scheduler.start();
@@ -125,6 +141,17 @@ public final class Launcher {
      *        [2] username
      *        [3] password
      *        [4] all-in-num: specified for the all-in mode
+     *        [5] spill-dir: specified for the out-of-core set covering
+     *        [6] bandit: specified for the bandit algorithm
+     *        [7] df-sketch: specified for getting the candidate terms from DF sketch
+     *        [8] pair-budget: specified for the conjunctive queries under the result cap
+     *        [9] batch-size: specified for sending several queries at the same time
+     *        [10] pipeline: specified for inferring the next query while downloading
+     *        [11] yield-threshold: specified for stopping paging when the result pages stop yielding new links
+     *        [12] streaming: specified for downloading the result pages while detecting the end of a query
+     *        [13] page-cache: specified for caching the query pages in a round
+     *        [14] static-fetch: specified for fetching the URL based query pages without browser
+     *        [15] blocked-hosts: specified for blocking the third-party hosts in browser
      */
     private static void init(final String[] args) {
         Options options = new Options();
@@ -162,6 +189,67 @@ public final class Launcher {
                 .desc("the number of turns in the all-in algorithm")
                 .build()
         );
+        options.addOption(Option.builder("sd")
+                .longOpt("spill-dir")
+                .hasArg()
+                .desc("the directory to spill the set covering matrix, run set covering out of core if specified")
+                .build()
+        );
+        options.addOption(Option.builder("bd")
+                .longOpt("bandit")
+                .desc("use the bandit algorithm, which doesn't build set covering matrix")
+                .build()
+        );
+        options.addOption(Option.builder("ds")
+                .longOpt("df-sketch")
+                .desc("maintain the approximate DF when indexing, and get the candidate terms from it")
+                .build()
+        );
+        options.addOption(Option.builder("pb")
+                .longOpt("pair-budget")
+                .hasArg()
+                .desc("the number of posting intersections computed in a turn to build conjunctive queries under the result cap")
+                .build()
+        );
+        options.addOption(Option.builder("bs")
+                .longOpt("batch-size")
+                .hasArg()
+                .desc("the number of queries in flight at the same time in a round")
+                .build()
+        );
+        options.addOption(Option.builder("pl")
+                .longOpt("pipeline")
+                .desc("infer the next query while the current round is downloading")
+                .build()
+        );
+        options.addOption(Option.builder("yt")
+                .longOpt("yield-threshold")
+                .hasArg()
+                .desc("stop paging a query when the new link ratio of its latest result pages is lower than this value")
+                .build()
+        );
+        options.addOption(Option.builder("st")
+                .longOpt("streaming")
+                .desc("download the result pages while detecting the end of a query, only for the URL based site")
+                .build()
+        );
+        options.addOption(Option.builder("pc")
+                .longOpt("page-cache")
+                .hasArg()
+                .desc("the max size in MB of the compressed query pages cached in a round")
+                .build()
+        );
+        options.addOption(Option.builder("sf")
+                .longOpt("static-fetch")
+                .desc("fetch the URL based query pages by HTTP client after checking their static HTML against the browser")
+                .build()
+        );
+        options.addOption(Option.builder("bh")
+                .longOpt("blocked-hosts")
+                .hasArg()
+                .desc("the comma separated hosts irrelevant to the rendering of results, the browser doesn't request them and their sub domains")
+                .build()
+        );
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd = null;
         try {
@@ -172,6 +260,22 @@ public final class Launcher {
         }
 
         Constant.ALL_IN_NUM = Integer.parseInt(cmd.getOptionValue("all-in-num", "0"));
+        Constant.SPILL_DIR = cmd.getOptionValue("spill-dir");
+        Constant.BANDIT = cmd.hasOption("bandit");
+        Constant.DF_SKETCH = cmd.hasOption("df-sketch");
+        Constant.PAIR_BUDGET = Integer.parseInt(cmd.getOptionValue("pair-budget", "0"));
+        Constant.BATCH_SIZE = Integer.parseInt(cmd.getOptionValue("batch-size", "1"));
+        Constant.PIPELINE = cmd.hasOption("pipeline");
+        Constant.YIELD_THRESHOLD = Double.parseDouble(cmd.getOptionValue("yield-threshold", "0"));
+        Constant.STREAMING = cmd.hasOption("streaming");
+        Constant.PAGE_CACHE_SIZE = Integer.parseInt(cmd.getOptionValue("page-cache", "0"));
+        Constant.STATIC_FETCH = cmd.hasOption("static-fetch");
+        if (cmd.hasOption("blocked-hosts")) {
+            Constant.BLOCKED_HOSTS = Arrays.stream(cmd.getOptionValue("blocked-hosts").split(","))
+                    .map(host -> host.trim().toLowerCase())
+                    .filter(host -> !host.isEmpty())
+                    .collect(Collectors.toSet());
+        }
 
         //config mysql
         String webIDStr = cmd.getOptionValue("web-id");
@@ -299,7 +403,11 @@ public final class Launcher {
         }
 
         //configure the index client to use ansj_seg analyzer
-        indexClient = new IndexClient.Builder(Paths.get(Constant.webSite.getWorkFile(),Constant.FT_INDEX_ADDR)).setAnalyzer(IndexClient.AnalyzerTpye.cn).build();
+        IndexClient.Builder indexBuilder = new IndexClient.Builder(Paths.get(Constant.webSite.getWorkFile(),Constant.FT_INDEX_ADDR)).setAnalyzer(IndexClient.AnalyzerTpye.cn);
+        if (Constant.DF_SKETCH) {
+            indexBuilder.setDFSketch(Constant.FT_INDEX_FIELD);
+        }
+        indexClient = indexBuilder.build();
         //configure the RAM md5 deduplicater
         //dedu = new RAMMD5Dedutor(Paths.get(Constant.webSite.getWorkFile(), Constant.DATA_ADDR));
 
@@ -307,7 +415,11 @@ public final class Launcher {
 
         //the global cookie manager
         CookieManager cookieManager = new CookieManager();
-        webBrowser = new HtmlUnitBrowser(cookieManager, Constant.extraConf.getTimeout());
+        //the query page cache shared by browser and HTTP client
+        PageCache pageCache = Constant.PAGE_CACHE_SIZE > 0 ? new PageCache(Constant.PAGE_CACHE_SIZE * 1024L * 1024L) : null;
+        //each query in a round has 5 producers using the browser, and the probing uses a browser in each thread
+        int browserNum = Math.max(5 * Constant.BATCH_SIZE, Constant.extraConf.getThreadNum());
+        webBrowser = new HtmlUnitBrowser(cookieManager, Constant.extraConf.getTimeout(), pageCache, browserNum, Constant.BLOCKED_HOSTS);
 
         //if the login URL is not blank, first to confirm the login information is valid
         if (!StringUtils.isBlank(Constant.extraConf.getLoginUrl())) {
@@ -325,15 +437,27 @@ public final class Launcher {
         httpClient = new ApacheClient.Builder()
                 .setCookieManager(cookieManager)
                 .setTimeout(Constant.extraConf.getTimeout())
+                .setPageCache(pageCache)
                 .build();
 
 
         //initialize the strategy algorithm, this algorithm would only be used in scheduler thread
         AlgorithmBase.Builder builder;
-        if (Constant.ALL_IN_NUM == 0) {
-            builder = new LinearIncrementalAlgorithm.Builder(indexClient, dedu);
+        if (Constant.BANDIT) {
+            builder = new BanditAlgorithm.Builder(indexClient, dedu);
         } else {
-            builder = new AllInAlgorithm.Builder().setIndexClient(indexClient).setAllInNum(Constant.ALL_IN_NUM).setLowBound(0.002).setUpBound(0.05);
+            SetCoverAlgorithm.Builder setCoverBuilder;
+            if (Constant.ALL_IN_NUM == 0) {
+                setCoverBuilder = new LinearIncrementalAlgorithm.Builder(indexClient, dedu);
+            } else {
+                setCoverBuilder = new AllInAlgorithm.Builder().setIndexClient(indexClient).setAllInNum(Constant.ALL_IN_NUM).setLowBound(0.002).setUpBound(0.05);
+            }
+            if (Constant.SPILL_DIR != null) {
+                setCoverBuilder.setSpillPath(Paths.get(Constant.SPILL_DIR));
+            }
+            setCoverBuilder.setCostModel(loadCostModel()).setPairBudget(Constant.PAIR_BUDGET)
+                    .setConjunctionSyntax(Constant.extraConf.getConjunctionSyntax());
+            builder = setCoverBuilder;
         }
         builder.setProductPath(Paths.get(Constant.webSite.getWorkFile(), Constant.DATA_ADDR));
         alg = builder.build();
@@ -350,6 +474,28 @@ public final class Launcher {
         }
 
 
+    }
+    /**
+     * build the cost model of the target site, and load the link numbers of the history rounds from status table
+     * @return
+     */
+    private static CostModel loadCostModel() {
+        CostModel costModel = new CostModel();
+        try (Connection conn = Orm.getSql2o().open()) {
+            String sql = "select sum(fLinkNum + sLinkNum) from status where webId=:webID and type=:type";
+            Integer pageNum = conn.createQuery(sql)
+                    .addParameter("webID", Constant.webSite.getWebId())
+                    .addParameter("type", Constant.STATUS_TYPE_QUERY)
+                    .executeScalar(Integer.class);
+            Integer linkNum = conn.createQuery(sql)
+                    .addParameter("webID", Constant.webSite.getWebId())
+                    .addParameter("type", Constant.STATUS_TYPE_INFO)
+                    .executeScalar(Integer.class);
+            if (pageNum != null && linkNum != null) {
+                costModel.loadHistory(pageNum, linkNum);
+            }
+        }
+        return costModel;
     }
     private static class Exitor extends Thread {
         @Override
@@ -393,6 +539,7 @@ public final class Launcher {
 
             System.out.println("start to close resource");
             try {
+                webBrowser.clearResource();//close the idle web clients
                 httpClient.close();
                 dedu.close();//dedu data save
                 alg.close();//qList data save
@@ -1,12 +1,15 @@
 package com.cufe.deepweb.crawler.branch;
 
+import com.cufe.deepweb.common.dedu.Deduplicator;
 import com.cufe.deepweb.common.http.simulate.WebBrowser;
 import com.cufe.deepweb.crawler.Constant;
 import com.cufe.deepweb.common.orm.model.Current;
 import com.cufe.deepweb.algorithm.AlgorithmBase;
 import com.cufe.deepweb.common.orm.Orm;
 import com.cufe.deepweb.crawler.service.infos.InfoLinkService;
+import com.cufe.deepweb.crawler.service.infos.info.Info;
 import com.cufe.deepweb.crawler.service.querys.QueryLinkService;
+import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.ansj.splitWord.analysis.NlpAnalysis;
 import org.apache.commons.lang3.StringUtils;
@@ -18,12 +21,18 @@ import org.sql2o.Sql2oException;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * main scheduler thread, be responsible for produce queryLinks and manage crawler status
+ * @param <T> the links of a query produced in status3 and consumed in status4
  */
-public abstract class Scheduler extends Thread{
+public abstract class Scheduler<T> extends Thread{
     private static Logger logger = LoggerFactory.getLogger(Scheduler.class);
+    /**
+     * the number of initial query candidates probed at the same time
+     */
+    private static final int PROBE_NUM = 32;
     private AlgorithmBase algo;
     private InfoLinkService infoLinkService;
     private Sql2o sql2o;
@@ -40,7 +49,8 @@ public abstract class Scheduler extends Thread{
         this.algo = algo;
         this.queryLinkService = queryLinkService;
         this.infoLinkService = infoLinkService;
-        this.msgQueue = msgQueue;
+        //the message queue isn't stored when the info links are got in status3 directly
+        this.msgQueue = msgQueue != null ? msgQueue : new LinkedBlockingDeque(Constant.QUEUE_SIZE);
         this.sql2o = Orm.getSql2o();
         this.keeper = new ReactiveStatusKeeper();
 
@@ -72,7 +82,10 @@ public abstract class Scheduler extends Thread{
     /**
      * the initial method used to detect and use the initial query by accessing the search link,
      * if can't access the search link without parameters, use the index.html of the target site inside.
-     * @return
+     * the candidate terms are probed by their first result page concurrently before any round starts,
+     * the candidate with the biggest estimated hit number is used as the initial query of the first round,
+     * the candidates are probed PROBE_NUM at a time until some of them hit something
+     * @return the estimated hit number of the initial query, 0 if no initial query is found
      */
     private int init() {
         logger.info("start initial process");
@@ -107,34 +120,74 @@ public abstract class Scheduler extends Thread{
 
         logger.trace("content is " + contentOp.get());
         String[] terms = NlpAnalysis.parse(contentOp.get()).toString().split(",");
-        Set<String> deduSet = new HashSet<>();
-        Random r = new Random(System.currentTimeMillis());
-        for(int i = 0; i < terms.length; i++) {
-            String t = terms[r.nextInt(terms.length)].trim();
+        List<String> candidates = new ArrayList<>();
+        for (String term : terms) {
+            String t = term.trim();
             //specified for ansj_seg split word
             if(t.contains("/")) {
                 t = t.substring(0, t.indexOf("/"));
             }
-
             //if this term has been used or this term is an empty string, jump
-            if(t.length() == 0 || !deduSet.add(t)) {
-                i--;
-                continue;
+            if(t.length() != 0 && !candidates.contains(t)) {
+                candidates.add(t);
             }
-            logger.info("initial query is " + t);
-            algo.setInitQuery(t);
-            int num = this.round();
-            if(num != 0) {
+        }
+        Collections.shuffle(candidates, new Random(System.currentTimeMillis()));
+
+        for (int start = 0; start < candidates.size(); start += PROBE_NUM) {
+            Map<String, Integer> hits = probe(candidates.subList(start, Math.min(start + PROBE_NUM, candidates.size())));
+            Optional<Map.Entry<String, Integer>> best = hits.entrySet().stream()
+                    .filter(e -> e.getValue() > 0)
+                    .max(Map.Entry.comparingByValue());
+            if (best.isPresent()) {
+                logger.info("initial query is {}, the estimated hit number is {}", best.get().getKey(), best.get().getValue());
+                algo.setInitQuery(best.get().getKey());
                 logger.info("initiate success");
-                return num;
+                return best.get().getValue();
             }
-            Constant.round = 0;
         }
         logger.info("initiate fail");
         return 0;
     }
+
     /**
-     * a crawling round in the loop
+     * probe the candidate terms by their first result page concurrently
+     * @param candidates
+     * @return the estimated hit number of each candidate
+     */
+    private Map<String, Integer> probe(List<String> candidates) {
+        Map<String, Integer> hits = new ConcurrentHashMap<>();
+        ExecutorService probePool = Executors.newFixedThreadPool(Math.min(candidates.size(), Constant.extraConf.getThreadNum()),
+                new ThreadFactoryBuilder().setNameFormat("probe_thread_%s").build());
+        for (String candidate : candidates) {
+            probePool.execute(() -> {
+                int hit = 0;
+                try {
+                    hit = queryLinkService.probe(candidate);
+                } catch (Exception ex) {
+                    logger.error("error happen when probe " + candidate, ex);
+                }
+                hits.put(candidate, hit);
+            });
+        }
+        probePool.shutdown();
+        try {
+            if (!probePool.awaitTermination(Constant.extraConf.getTimeout() * (long) candidates.size(), TimeUnit.MILLISECONDS)) {
+                logger.warn("probing the candidates of initial query timeout");
+            }
+        } catch (InterruptedException ex) {
+            logger.error("interrupted when wait for probing");
+        } finally {
+            //the probes still running are interrupted, their candidates are regarded as hitting nothing
+            probePool.shutdownNow();
+        }
+        logger.info("probe {} candidates of initial query, {} of them hit something", candidates.size(),
+                hits.values().stream().filter(hit -> hit > 0).count());
+        return hits;
+    }
+    /**
+     * a crawling round in the loop, a round sends a batch of queries at the same time,
+     * at most Constant.BATCH_SIZE queries are in flight, the info links of all the queries are downloaded by the same consumers
      * @return the downloaded document number of current round
      */
     private int round() {
@@ -150,30 +203,163 @@ public abstract class Scheduler extends Thread{
         //tag: term inference
         keeper.fixStatus(1,2);
         logger.info("start the M2status");
-        //status2: generate the query term
-        String curQuery = algo.getNextQuery();
-        if (curQuery == null) {
+        //status2: generate the query terms
+        int parallelism = Math.max(Constant.BATCH_SIZE, 1);
+        List<String> queries = algo.getNextQueries(algo.getBatchSize(parallelism));
+        if (queries.isEmpty()) {
             logger.info("can't generate more queries, exit");
             System.exit(0);
         }
-        logger.info("this turn's query is {}",curQuery);
+        logger.info("this turn's queries are {}", queries);
 
         //status3
         //tag: queryLink generation
         keeper.fixStatus(2,3);
         logger.info("start the M3status");
-        //status3: get all the queryLinks
-        status3(curQuery);
+        //the consumers of this round, they exit when all the queries have been produced and the message queue is empty
+        AtomicInteger producingNum = new AtomicInteger(queries.size());
+        ThreadPoolExecutor downloadPool = startConsumers(producingNum);
+        //each query runs its own status3 and status4, the round waits for all of them
+        int inFlight = Math.min(parallelism, queries.size());
+        ExecutorService queryPool = Executors.newFixedThreadPool(inFlight, new ThreadFactoryBuilder().setNameFormat("query_thread_%s").build());
+        CountDownLatch probeLatch = new CountDownLatch(1);//count down when the first query starts to download
+        //the measured probing time, crawled page number and found info link number of each query
+        long[] probeMillis = new long[queries.size()];
+        int[] pageNums = new int[queries.size()];
+        int[] linkNums = new int[queries.size()];
+        Stopwatch stopwatch = Stopwatch.createStarted();//used to measure the cost of current queries
+        List<Future<?>> futureList = new ArrayList<>();
+        List<Deduplicator.Tally> tallies = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            String query = queries.get(i);
+            int index = i;
+            Deduplicator.Tally tally = new Deduplicator.Tally();
+            tallies.add(tally);
+            futureList.add(queryPool.submit(() -> {
+                try {
+                    //status3: get all the queryLinks
+                    Stopwatch probeWatch = Stopwatch.createStarted();
+                    T links = status3(query, tally);
+                    probeMillis[index] = probeWatch.elapsed(TimeUnit.MILLISECONDS);
+                    probeLatch.countDown();
+                    //status4: produce the info links for the consumers
+                    status4(links);
+                    pageNums[index] = getPageNum(links);
+                    linkNums[index] = getLinkNum(links);
+                } finally {
+                    probeLatch.countDown();
+                    producingNum.decrementAndGet();
+                }
+            }));
+        }
+        queryPool.shutdown();
 
         //status4
         //tag: infoLink download
+        try {
+            probeLatch.await();
+        } catch (InterruptedException ex) {
+            logger.error("interrupted when wait for the first status3");
+        }
+        long downloadStart = stopwatch.elapsed(TimeUnit.MILLISECONDS);
         keeper.fixStatus(3,4);
         logger.info("start the M4status");
+        if (Constant.PIPELINE) {
+            //infer the next query in the scheduler thread, the downloading threads keep running
+            algo.speculate();
+        }
+
+        for (Future<?> f : futureList) {
+            try {
+                f.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.error("error happen when crawl a query", ex);
+            }
+        }
+        downloadPool.shutdown();
+        awaitThreadPool(downloadPool);
+        long downloadMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS) - downloadStart;
+        sLinkNum = keeper.dynamicUpdate();
+        //the deduplication counters are kept apart for each query of the batch, and fed back in the order of the batch
+        for (int i = 0; i < queries.size(); i++) {
+            algo.record(queries.get(i), tallies.get(i).getNew(), tallies.get(i).getCost());
+        }
+        algo.feedback(sLinkNum);
+        //the downloading time is shared by the queries in flight, each query takes the part of its pages
+        int pageSum = Arrays.stream(pageNums).sum();
+        for (int i = 0; i < queries.size(); i++) {
+            long share = pageSum == 0 ? downloadMillis * inFlight / queries.size() : downloadMillis * inFlight * pageNums[i] / pageSum;
+            algo.measure(queries.get(i), pageNums[i], linkNums[i], probeMillis[i], share);
+        }
+        //all the documents of this round have been indexed, let the algorithm prepare the next inference
+        algo.prefetch();
+        keeper.fixStatus(4,0);
+        return sLinkNum;
+    }
+
+    /**
+     * start the consumers of a round, which download the info links in the message queue
+     * @param producingNum the number of queries which are still producing info links
+     * @return the thread pool of the consumers
+     */
+    private ThreadPoolExecutor startConsumers(AtomicInteger producingNum) {
+        int threadNum = Constant.extraConf.getThreadNum();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threadNum,
+                threadNum,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingDeque<>(),
+                threadFactory
+        );
+        for (int i = 0; i < threadNum; i++) {
+            pool.execute(() -> {
+                while (true) {
+                    Info info = null;
+                    try {
+                        info = (Info) msgQueue.poll(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        //ignored
+                    }
+                    if (info != null) {
+                        consume(info);
+                        continue;
+                    }
+                    //if can't get info link from message queue and all the queries have been produced, the thread exit
+                    if (producingNum.get() == 0 && msgQueue.isEmpty()) {
+                        break;
+                    }
+                }
+            });
+        }
+        return pool;
+    }
 
-        ThreadPoolExecutor threadPool = status4();
-        threadPool.shutdown();
+    /**
+     * put the info link into the message queue,
+     * if the message queue is full, directly consume the info link in current thread as a feedback mechanism
+     * @param info
+     */
+    protected final void offer(Info info) {
+        if (!msgQueue.offer(info)) {
+            consume(info);
+        }
+    }
+
+    /**
+     * download the page corresponding to the info link into directory, and build the page content into index
+     * @param info
+     */
+    private void consume(Info info) {
+        logger.trace("consume info link {}", info.getUrl());
+        infoLinkService.downloadAndIndex(info);
+    }
 
-        //loop here until all the thread in thread pool exit
+    /**
+     * loop here until all the thread in thread pool exit
+     * @param threadPool the thread pool which has been shutdown
+     */
+    private void awaitThreadPool(ThreadPoolExecutor threadPool) {
         int stopCount = 20;//a flag to indicate whether to force stop the thread pool
         while (true) {
             try {
@@ -197,9 +383,6 @@ public abstract class Scheduler extends Thread{
                 logger.error("interrupted when wait for thread pool");
             }
         }
-        sLinkNum = keeper.dynamicUpdate();
-        keeper.fixStatus(4,0);
-        return sLinkNum;
     }
     /**
      * detect whether to continue to crawl
@@ -232,8 +415,34 @@ public abstract class Scheduler extends Thread{
 
 
 
-    protected abstract void status3(String query);
-    protected abstract ThreadPoolExecutor status4();
+    /**
+     * get all the links of the query, this method may be invoked by different threads at the same time
+     * @param query
+     * @param tally the deduplication counters of the query
+     * @return
+     */
+    protected abstract T status3(String query, Deduplicator.Tally tally);
+
+    /**
+     * produce the info links of a query into the message queue by offer(Info), return when all of them have been produced,
+     * they are downloaded by the consumers of the round
+     * @param links the return value of status3
+     */
+    protected abstract void status4(T links);
+
+    /**
+     * the result page number crawled for a query, it's invoked after status4
+     * @param links the return value of status3
+     * @return
+     */
+    protected abstract int getPageNum(T links);
+
+    /**
+     * the info link number found for a query, it's invoked after status4
+     * @param links the return value of status3
+     * @return
+     */
+    protected abstract int getLinkNum(T links);
 
 
     /**
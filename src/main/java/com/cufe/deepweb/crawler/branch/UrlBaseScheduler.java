@@ -1,7 +1,7 @@
 package com.cufe.deepweb.crawler.branch;
 
 import com.cufe.deepweb.algorithm.AlgorithmBase;
-import com.cufe.deepweb.crawler.Constant;
+import com.cufe.deepweb.common.dedu.Deduplicator;
 import com.cufe.deepweb.crawler.service.infos.InfoLinkService;
 import com.cufe.deepweb.crawler.service.infos.info.Info;
 import com.cufe.deepweb.crawler.service.querys.UrlBaseQueryLinkService;
@@ -10,122 +10,80 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
-public class UrlBaseScheduler extends Scheduler {
+public class UrlBaseScheduler extends Scheduler<UrlBaseQueryLinkService.QueryLinks> {
     private Logger logger = LoggerFactory.getLogger(UrlBaseScheduler.class);
-    private InfoLinkService infoLinkService;
+    /**
+     * the number of threads which produce the info links of a query
+     */
+    private static final int PRODUCER_NUM = 5;
     private UrlBaseQueryLinkService queryLinkService;
-    private UrlBaseQueryLinkService.QueryLinks queryLinks;
 
     public UrlBaseScheduler(AlgorithmBase algo, UrlBaseQueryLinkService urlBaseueryLinkService, InfoLinkService infoLinkService, BlockingDeque msgQueue) {
         super(algo, urlBaseueryLinkService, infoLinkService, msgQueue);
         this.queryLinkService = urlBaseueryLinkService;
-        this.infoLinkService = infoLinkService;
     }
 
     @Override
-    protected void status3(String query) {
-        queryLinks = queryLinkService.getQueryLinks(query);
+    protected UrlBaseQueryLinkService.QueryLinks status3(String query, Deduplicator.Tally tally) {
+        UrlBaseQueryLinkService.QueryLinks queryLinks = queryLinkService.getQueryLinks(query);
+        queryLinks.setTally(tally);
+        return queryLinks;
     }
 
     @Override
-    protected ThreadPoolExecutor status4() {
-        ThreadPoolExecutor pool = new ThreadPoolExecutor(
-                Constant.extraConf.getThreadNum(),
-                Constant.extraConf.getThreadNum(),
-                0,
-                TimeUnit.MILLISECONDS,
-                new LinkedBlockingDeque<>(),//set the size of thread queue to infinity
-                threadFactory
-        );
-
-        //only when query link number is bigger than zero, it's necessary to use the thread pool
-        if (queryLinks.getPageNum() > 0) {
-
-            AtomicInteger produceCounter = new AtomicInteger(0);
-            Runnable producer =() -> {
-                String link = null;
-                int tick = 100;
-                while ((link = queryLinks.next()) != null) {
-
-                    //periodically close webclient to explicitly support gc
-                    if (tick <= 0) {
-                        queryLinkService.clearThreadResource();
-                        tick = 100;
-                    }
-                    try {
-                        //there is no need to check whether the link is a query-link here
-                        logger.trace(queryLinks.getCounter()+ "");
-                        consumeQueryLink(link);
-                        tick--;
-                    } catch (Exception ex) {
-                        //ignored
-                        logger.error("runtime exception happen", ex);
-                    }
+    protected void status4(UrlBaseQueryLinkService.QueryLinks queryLinks) {
+        //only when query link number is bigger than zero, it's necessary to produce
+        if (queryLinks.getPageNum() <= 0) {
+            return;
+        }
+        Runnable producer = () -> {
+            String link = null;
+            //the web clients are borrowed from the browser's pool for each page, and recycled by the pool
+            while ((link = queryLinks.next()) != null) {
+                try {
+                    //there is no need to check whether the link is a query-link here
+                    logger.trace(queryLinks.getCounter() + "");
+                    consumeQueryLink(link, queryLinks);
+                } catch (Exception ex) {
+                    //ignored
+                    logger.error("runtime exception happen", ex);
                 }
-                produceCounter.incrementAndGet();
-                queryLinkService.clearThreadResource();
-            };
-            for (int i = 0 ; i < 5 ; i++) {
-                new Thread(producer).start();
             }
-
-            for (int i = 0 ; i < Constant.extraConf.getThreadNum() ; i++) {
-                pool.execute(() -> {
-                    while (true) {
-
-                        //if here is not null, this is a info link
-                        Info info = (Info) msgQueue.poll();
-                        if (info != null) {
-                            this.consumeInfoLink(info);
-                            continue;
-                        }
-                        if (produceCounter.get() < 5) {
-                            continue;
-                        }
-
-                        //if can't get info link from message queue and all the produce thread exit,
-                        //the thread exit
-                        logger.trace("can't get query link, total page num is {}， current counter is {}", queryLinks.getPageNum(), queryLinks.getCounter());
-                        break;
-                    }
-
-                });
+        };
+        Thread[] producers = new Thread[Math.min(PRODUCER_NUM, queryLinks.getPageNum())];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(producer);
+            producers[i].start();
+        }
+        for (Thread t : producers) {
+            try {
+                t.join();
+            } catch (InterruptedException ex) {
+                logger.error("interrupted when wait for producer");
             }
         }
-        return pool;
+        logger.trace("all the query links have been produced, total page num is {}， current counter is {}", queryLinks.getPageNum(), queryLinks.getCounter());
+    }
+
+    @Override
+    protected int getPageNum(UrlBaseQueryLinkService.QueryLinks queryLinks) {
+        return queryLinks.getCounter() - 1;
+    }
+
+    @Override
+    protected int getLinkNum(UrlBaseQueryLinkService.QueryLinks queryLinks) {
+        return queryLinks.getLinkNum();
     }
 
     /**
      * consume query link
      * get info links from the page corresponding to the query link, and restore them into message queue
      * @param queryLink
+     * @param queryLinks the query which the query link belongs to
      */
-    private void consumeQueryLink(String queryLink) {
-        List<Info> infos = queryLinkService.getInfoLinks(queryLink);
-        if (infos.size() == 0) return;
-        infos.forEach(info -> {
-            //if can't push info links into message queue
-            //maybe because the message queue is full(this situation is hard to happen, just possible)
-            //directly consume the info links in current thread
-            //consider this as a feedback mechanism
-            if (!msgQueue.offer(info)) {
-                consumeInfoLink(info);
-            }
-        });
-    }
-
-    /**
-     * consume info link
-     * download the page corresponding to the info link into directory, and build the page content into index
-     * @param info
-     */
-    private void consumeInfoLink(Info info) {
-        logger.trace("consume info link {}", info.getUrl());
-        infoLinkService.downloadAndIndex(info);
+    private void consumeQueryLink(String queryLink, UrlBaseQueryLinkService.QueryLinks queryLinks) {
+        List<Info> infos = queryLinkService.getInfoLinks(queryLink, queryLinks);
+        infos.forEach(this::offer);
     }
 }
@@ -1,18 +1,23 @@
 package com.cufe.deepweb.crawler.service;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * the link numbers are counted atomically, because the links of several queries may be dealt with at the same time
+ */
 public abstract class LinkService {
-    protected int totalLinkNum;
-    protected int failedLinkNum;
+    protected final AtomicInteger totalLinkNum = new AtomicInteger(0);
+    protected final AtomicInteger failedLinkNum = new AtomicInteger(0);
 
     /**
      * return the link number of different status in current round
      * @return
      */
     public int getFailedLinkNum() {
-        return this.failedLinkNum;
+        return this.failedLinkNum.get();
     }
     public int getTotalLinkNum() {
-        return this.totalLinkNum;
+        return this.totalLinkNum.get();
     }
 
     /**
@@ -20,8 +25,8 @@ public abstract class LinkService {
      * this method should be invoked by the user of this service
      */
     public void reset() {
-        this.failedLinkNum = 0;
-        this.totalLinkNum = 0;
+        this.failedLinkNum.set(0);
+        this.totalLinkNum.set(0);
     }
 
     /**
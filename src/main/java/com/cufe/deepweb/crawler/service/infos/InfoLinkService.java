@@ -116,7 +116,7 @@ public class InfoLinkService extends LinkService {
      * @param info
      */
     public void  downloadAndIndex(Info info) {
-        totalLinkNum++;
+        totalLinkNum.incrementAndGet();
         RespContent content = httpClient.getContent(info.getUrl());
         Map<String ,String> map = info.getPayload() == null ? new HashMap<>() : info.getPayload();
 
@@ -128,7 +128,7 @@ public class InfoLinkService extends LinkService {
             try {
                 Utils.save2File(htmlContent.getContent(), fileAddr);
             } catch (IOException ex) {
-                failedLinkNum++;
+                failedLinkNum.incrementAndGet();
                 logger.error("IOException in save content to file", ex);
                 Utils.deleteFile(fileAddr);
             }
@@ -151,7 +151,7 @@ public class InfoLinkService extends LinkService {
             try {
                 Utils.save2File(streamContent.getStream(), fileAddr);
             } catch (IOException ex) {
-                failedLinkNum++;
+                failedLinkNum.incrementAndGet();
                 logger.error("IOException in save content to file:" + fileAddr, ex);
                 File f = new File(fileAddr);
                 Utils.deleteFile(fileAddr);
@@ -165,7 +165,7 @@ public class InfoLinkService extends LinkService {
             }
             indexClient.addDocument(map);
         } else {
-            failedLinkNum++;
+            failedLinkNum.incrementAndGet();
         }
     }
 
@@ -24,12 +24,47 @@ public class ApiBaseQueryLinkService extends QueryLinkService {
     private ApiBasedQuery buildQuery(String keyword) {
         return Query.asApiBased(Constant.apiBaseConf.getPrefix(), Constant.apiBaseConf.getInputXpath(), Constant.apiBaseConf.getSubmitXpath(), keyword);
     }
+    /**
+     * the info link number in the result page of the submitted form
+     * @param keyword
+     * @return
+     */
+    @Override
+    public int probe(String keyword) {
+        return browser.getAllLinks(buildQuery(keyword), new LinkCollector() {
+            @Override
+            public List<Info> privateOp(List<Info> links) {
+                return links;
+            }
+        }).size();
+    }
+
+    /**
+     * the result of the submitted form is a single page
+     * @param keyword
+     * @return
+     */
+    @Override
+    public int probePageNum(String keyword) {
+        return probe(keyword) > 0 ? 1 : 0;
+    }
+
     public List<Info> getInfoLinks(String keyword) {
-        this.totalLinkNum++;
+        return getInfoLinks(keyword, null);
+    }
+
+    /**
+     * get the info links in the result page of the submitted form, and count them in the tally of the query
+     * @param keyword
+     * @param tally can be null
+     * @return
+     */
+    public List<Info> getInfoLinks(String keyword, Deduplicator.Tally tally) {
+        this.totalLinkNum.incrementAndGet();
         ApiBasedQuery query = buildQuery(keyword);
-        List<Info> links = browser.getAllLinks(query, collector);
+        List<Info> links = browser.getAllLinks(query, tally == null ? collector : new InfoLinkCollector(tally));
         if (links.size() == 0) {
-            this.failedLinkNum++;
+            this.failedLinkNum.incrementAndGet();
             return Collections.emptyList();
         }
         logger.trace("keyword:{} infoLinks:{}", keyword, Arrays.toString(links.toArray()));
@@ -37,11 +72,21 @@ public class ApiBaseQueryLinkService extends QueryLinkService {
     }
 
     class InfoLinkCollector extends LinkCollector {
+        private final Deduplicator.Tally tally;
+
+        InfoLinkCollector() {
+            this(null);
+        }
+
+        InfoLinkCollector(Deduplicator.Tally tally) {
+            this.tally = tally;
+        }
+
         //TODO: should implement in detail
         @Override
         public List<Info> privateOp(List<Info> links) {
             links = links.stream().filter(link -> {//remove the repeated links
-                return dedu.add(link.getUrl());
+                return dedu.add(link.getUrl(), tally);
             }).collect(Collectors.toList());
             return links;
         }
@@ -100,9 +100,24 @@ public class JsonBaseQueryLinkService extends QueryLinkService {
         return total;
     }
 
+    /**
+     * the total number in the JSON response of the first result page
+     * @param keyword
+     * @return
+     */
+    @Override
+    public int probe(String keyword) {
+        return getTotalPageNum(keyword);
+    }
+
+    @Override
+    public int probePageNum(String keyword) {
+        return getTotalPageNum(keyword);
+    }
+
     public QueryLinks getQueryLinks(String keyword) {
         int total = getTotalPageNum(keyword);
-        this.totalLinkNum = total;
+        this.totalLinkNum.addAndGet(total);
         return new JsonBaseQueryLinks(total, keyword);
     }
 
@@ -112,6 +127,16 @@ public class JsonBaseQueryLinkService extends QueryLinkService {
      * @return
      */
     public List<Info> getInfoLinks(String queryLink) {
+        return getInfoLinks(queryLink, null);
+    }
+
+    /**
+     * get the infoLinks from target query page, and report the yield of the page
+     * @param queryLink
+     * @param queryLinks the query which the query link belongs to, can be null
+     * @return
+     */
+    public List<Info> getInfoLinks(String queryLink, QueryLinks queryLinks) {
         JsonContent content = httpClient.getJSON(queryLink);//directly cast to json content, maybe cause exception
         if (content == null) return Collections.emptyList();
         JsonNode node = content.getRoot();
@@ -122,10 +147,11 @@ public class JsonBaseQueryLinkService extends QueryLinkService {
 
         //if can't find the target node by JsonPointer or the target node is not a ArrayNode, just return empty list
         if (node.isMissingNode() || !(node instanceof ArrayNode)) {
-            failedLinkNum++;
+            failedLinkNum.incrementAndGet();
             return Collections.emptyList();
         }
         List<Info> list = new ArrayList<>();
+        int validNum = 0;
 
         ArrayNode arr = (ArrayNode) node;
         for (JsonNode e : arr) {
@@ -178,7 +204,11 @@ public class JsonBaseQueryLinkService extends QueryLinkService {
 
             //TODO: can use collector to implement the filter logic in the future
             //dedu operation
-            if (!valid || !dedu.add(sbLink.toString())) {
+            if (!valid) {
+                continue;
+            }
+            validNum++;
+            if (!dedu.add(sbLink.toString(), queryLinks == null ? null : queryLinks.getTally())) {
                 continue;
             }
 
@@ -196,6 +226,9 @@ public class JsonBaseQueryLinkService extends QueryLinkService {
 
             list.add(Info.link(sbLink.toString()).addPayLoad(Constant.FT_INDEX_FIELD, sbLoad.toString()).addPayLoad("filename", filename).addPayLoad("link", sbLink.toString()));
         }
+        if (queryLinks != null) {
+            queryLinks.report(list.size(), validNum);
+        }
         return list;
     }
 
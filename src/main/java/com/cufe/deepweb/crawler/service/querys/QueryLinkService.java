@@ -3,9 +3,22 @@ package com.cufe.deepweb.crawler.service.querys;
 import com.cufe.deepweb.common.dedu.Deduplicator;
 import com.cufe.deepweb.common.http.simulate.LinkCollector;
 import com.cufe.deepweb.common.http.simulate.WebBrowser;
+import com.cufe.deepweb.crawler.Constant;
 import com.cufe.deepweb.crawler.service.LinkService;
+import com.cufe.deepweb.crawler.service.infos.info.Info;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public abstract class QueryLinkService extends LinkService {
+    private final Logger logger = LoggerFactory.getLogger(QueryLinkService.class);
+    /**
+     * the number of the latest result pages used to compute the rolling yield of a query
+     */
+    private static final int YIELD_WINDOW = 5;
     protected WebBrowser browser;
     protected Deduplicator dedu;
     /**
@@ -39,6 +52,24 @@ public abstract class QueryLinkService extends LinkService {
     }
 
 
+    /**
+     * estimate the hit number of the keyword by the first result page only,
+     * the links found by probing aren't deduplicated and aren't counted in the link numbers of current round
+     * this method can be invoked by different threads at the same time
+     * @param keyword
+     * @return 0 if the keyword hits nothing
+     */
+    public abstract int probe(String keyword);
+
+    /**
+     * confirm the total page number of the keyword without harvesting, it may cost several requests,
+     * the query links aren't counted in the link numbers of current round
+     * this method can be invoked by different threads at the same time
+     * @param keyword
+     * @return 0 if the keyword hits nothing
+     */
+    public abstract int probePageNum(String keyword);
+
     @Override
     public void clearThreadResource() {
         this.browser.clearResource();
@@ -46,6 +77,10 @@ public abstract class QueryLinkService extends LinkService {
 
     /**
      * the generator of query link
+     * it also monitors the yield of the result pages, when the ratio of new info links in the latest YIELD_WINDOW pages
+     * is lower than Constant.YIELD_THRESHOLD, the following pages wouldn't be generated
+     * in streaming mode, the total page number is unknown, the pages are generated one by one until the end is detected by the reported pages:
+     * an empty page, a page identical to an earlier page, or YIELD_WINDOW successive pages without new info link
      */
     public abstract class QueryLinks {
         /**
@@ -54,9 +89,41 @@ public abstract class QueryLinkService extends LinkService {
         private int counter = 1;
         private int pageNum;
         private String keyword;
+        /**
+         * the new info link number and the total info link number of the latest result pages, used as ring buffers
+         */
+        private int[] newNums = new int[YIELD_WINDOW];
+        private int[] totalNums = new int[YIELD_WINDOW];
+        private int reportNum = 0;
+        /**
+         * the info link number in all the reported pages
+         */
+        private int linkNum = 0;
+        private boolean stopped = false;
+        private boolean streaming;
+        /**
+         * the fingerprints of the reported pages and the number of successive pages without new info link, only used in streaming mode
+         */
+        private Set<Long> fingerprints;
+        private int fruitlessNum = 0;
+        /**
+         * the deduplication counters of this query, null if they aren't kept apart
+         */
+        private volatile Deduplicator.Tally tally;
         QueryLinks(int pageNum, String keyword) {
             this.pageNum = pageNum;
             this.keyword = keyword;
+            this.streaming = false;
+        }
+
+        /**
+         * build the query links in streaming mode
+         * @param keyword
+         */
+        QueryLinks(String keyword) {
+            this(Integer.MAX_VALUE, keyword);
+            this.streaming = true;
+            this.fingerprints = new HashSet<>();
         }
 
         public int getCounter() {
@@ -66,6 +133,26 @@ public abstract class QueryLinkService extends LinkService {
             return this.pageNum;
         }
 
+        /**
+         * the info link number found in the reported pages of this query
+         * @return
+         */
+        public synchronized int getLinkNum() {
+            return this.linkNum;
+        }
+
+        public Deduplicator.Tally getTally() {
+            return this.tally;
+        }
+
+        /**
+         * keep the deduplication counters of this query in the specified tally, it should be set before generating query links
+         * @param tally
+         */
+        public void setTally(Deduplicator.Tally tally) {
+            this.tally = tally;
+        }
+
         /**
          * get next queryLink
          * @return null if can't generate next query link
@@ -73,13 +160,67 @@ public abstract class QueryLinkService extends LinkService {
         public synchronized String next() {
 
             String ans = null;
-            if (counter <= pageNum) {
+            if (!stopped && counter <= pageNum) {
                 ans = buildQueryLink(keyword, counter);
                 counter++;
+                //the total page number is unknown in streaming mode, so the query links are counted when generated
+                if (streaming) {
+                    totalLinkNum.incrementAndGet();
+                }
             }
             return ans;
         }
 
+        /**
+         * report the info links found in a result page of this query
+         * @param newNum the info link number which can be added into the deduplicator
+         * @param links all the info links in the page
+         */
+        public synchronized void report(int newNum, List<Info> links) {
+            if (streaming && !stopped) {
+                //the fingerprint doesn't depend on the order of the links
+                long fingerprint = links.size();
+                for (Info link : links) {
+                    fingerprint += link.getUrl().hashCode() * 0x9E3779B97F4A7C15L;
+                }
+                fruitlessNum = newNum == 0 ? fruitlessNum + 1 : 0;
+                if (links.isEmpty() || !fingerprints.add(fingerprint) || fruitlessNum >= YIELD_WINDOW) {
+                    stopped = true;
+                    logger.info("detect the end of {} at page {}", keyword, counter - 1);
+                }
+            }
+            report(newNum, links.size());
+        }
+
+        /**
+         * report the info links found in a result page of this query
+         * @param newNum the info link number which can be added into the deduplicator
+         * @param totalNum the info link number in the page
+         */
+        public synchronized void report(int newNum, int totalNum) {
+            newNums[reportNum % YIELD_WINDOW] = newNum;
+            totalNums[reportNum % YIELD_WINDOW] = totalNum;
+            reportNum++;
+            linkNum += totalNum;
+            if (stopped || Constant.YIELD_THRESHOLD <= 0 || reportNum < YIELD_WINDOW) {
+                return;
+            }
+            int newSum = 0, totalSum = 0;
+            for (int i = 0; i < YIELD_WINDOW; i++) {
+                newSum += newNums[i];
+                totalSum += totalNums[i];
+            }
+            double yield = totalSum == 0 ? 0 : newSum / (double) totalSum;
+            if (yield < Constant.YIELD_THRESHOLD) {
+                stopped = true;
+                //the pages which wouldn't be generated aren't counted in the query link number of current round
+                if (!streaming) {
+                    totalLinkNum.addAndGet(counter - 1 - pageNum);
+                }
+                logger.info("the yield of the latest {} pages of {} is {}, stop at page {} of {}", YIELD_WINDOW, keyword, yield, counter - 1, pageNum);
+            }
+        }
+
         //for subclass to implement
         protected abstract String buildQueryLink(String keyword, int pageNum);
     }
@@ -1,19 +1,28 @@
 package com.cufe.deepweb.crawler.service.querys;
 
 import com.cufe.deepweb.common.dedu.Deduplicator;
+import com.cufe.deepweb.common.dedu.PageSignature;
+import com.cufe.deepweb.common.http.client.CusHttpClient;
+import com.cufe.deepweb.common.http.client.resp.HtmlContent;
+import com.cufe.deepweb.common.http.client.resp.RespContent;
+import com.cufe.deepweb.common.http.client.resp.StreamContent;
 import com.cufe.deepweb.crawler.service.infos.info.Info;
 import com.cufe.deepweb.crawler.service.querys.query.Query;
 import com.cufe.deepweb.common.http.simulate.LinkCollector;
 import com.cufe.deepweb.crawler.Constant;
 import com.cufe.deepweb.common.http.simulate.WebBrowser;
-import org.ansj.splitWord.analysis.NlpAnalysis;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -21,14 +30,115 @@ import java.util.stream.Collectors;
  */
 public class UrlBaseQueryLinkService extends QueryLinkService {
     private final Logger logger = LoggerFactory.getLogger(UrlBaseQueryLinkService.class);
+    /**
+     * the number of query pages compared between the static HTML and the browser before using the static HTML
+     */
+    private static final int CALIBRATION_NUM = 3;
+    /**
+     * the ratio of the browser's info links which must be found in the static HTML in calibration
+     */
+    private static final double CALIBRATION_COVERAGE = 0.9;
+    /**
+     * the HTTP client to fetch the static HTML of query pages, null if always use the browser
+     */
+    private CusHttpClient httpClient;
+    /**
+     * whether the static HTML can be used, null when calibrating
+     */
+    private volatile Boolean staticUsable;
+    private int calibratedNum;
 
     /**
      *
      * @param browser
      */
     public UrlBaseQueryLinkService(WebBrowser browser, Deduplicator dedu) {
+        this(browser, dedu, null);
+    }
+
+    /**
+     * fetch the query pages by the HTTP client if their static HTML contains the info links
+     * @param browser
+     * @param dedu
+     * @param httpClient
+     */
+    public UrlBaseQueryLinkService(WebBrowser browser, Deduplicator dedu, CusHttpClient httpClient) {
         super(browser, dedu);
         this.collector = new InfoLinkCollector();
+        this.httpClient = httpClient;
+        this.staticUsable = null;
+        this.calibratedNum = 0;
+    }
+
+    /**
+     * collect the info links from the query page, the repeated links aren't removed
+     * if the HTTP client is specified, the first CALIBRATION_NUM query pages are fetched by both the HTTP client and the browser,
+     * if the static HTML always contains the info links rendered by the browser, the following pages are fetched by the HTTP client,
+     * and the browser is only used when the static HTML of a page yields no info link
+     * @param queryLink
+     * @return
+     */
+    private List<Info> collectLinks(String queryLink) {
+        if (httpClient == null || Boolean.FALSE.equals(staticUsable)) {
+            return browser.getAllLinks(Query.asUrlBased(queryLink), collector);
+        }
+        List<Info> staticLinks = collectStaticLinks(queryLink);
+        if (staticUsable == null) {
+            List<Info> links = browser.getAllLinks(Query.asUrlBased(queryLink), collector);
+            calibrate(staticLinks, links);
+            return links;
+        }
+        if (staticLinks.isEmpty()) {
+            logger.trace("no info link in the static HTML of {}, use the browser instead", queryLink);
+            return browser.getAllLinks(Query.asUrlBased(queryLink), collector);
+        }
+        return staticLinks;
+    }
+
+    /**
+     * compare the info links of a query page found in the static HTML and by the browser
+     * @param staticLinks
+     * @param links
+     */
+    private synchronized void calibrate(List<Info> staticLinks, List<Info> links) {
+        //the empty page can't tell anything
+        if (staticUsable != null || links.isEmpty()) return;
+        Set<String> staticUrls = staticLinks.stream().map(Info::getUrl).collect(Collectors.toSet());
+        long covered = links.stream().filter(link -> staticUrls.contains(link.getUrl())).count();
+        double coverage = covered / (double) links.size();
+        if (coverage < CALIBRATION_COVERAGE) {
+            staticUsable = false;
+            logger.info("the static HTML only contains {} of the info links rendered by browser, use the browser for query pages", coverage);
+        } else if (++calibratedNum >= CALIBRATION_NUM) {
+            staticUsable = true;
+            logger.info("the static HTML contains the info links of {} query pages, use the HTTP client for query pages", calibratedNum);
+        }
+    }
+
+    /**
+     * collect the info links from the static HTML of the query page
+     * @param queryLink
+     * @return empty list if the static HTML can't be got
+     */
+    private List<Info> collectStaticLinks(String queryLink) {
+        RespContent content = httpClient.getContent(queryLink);
+        if (content instanceof StreamContent) {
+            try {
+                ((StreamContent) content).getStream().close();
+            } catch (IOException ex) {
+                //ignored
+            }
+            return Collections.emptyList();
+        }
+        if (!(content instanceof HtmlContent)) {
+            return Collections.emptyList();
+        }
+        try {
+            return collector.collect(((HtmlContent) content).getContent(), new URL(queryLink), Constant.urlBaseConf.getInfoLinkXpath(), null);
+        } catch (MalformedURLException ex) {
+            logger.error("query link " + queryLink + " is malformed", ex);
+            return Collections.emptyList();
+        }
     }
 
     /**
@@ -71,18 +181,101 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
      * @return
      */
     private int getTotalPageNum(String keyword) {
-        int endNum = this.incrementNum(keyword);//incremental to get the first empty page
+        int num = extractTotalPageNum(keyword);
+        if (num >= 0) {
+            return num;
+        }
+        //the signatures of the probed pages, so each page is accessed and hashed only once in the probing
+        Map<Integer, PageSignature> signatures = new HashMap<>();
+        int endNum = this.incrementNum(keyword, signatures);//incremental to get the first empty page
         if (endNum == 1) return 0;
         int startNum = endNum / 2;
-        return getEndPageNum(startNum, endNum, keyword);
+        return getEndPageNum(startNum, endNum, keyword, signatures);
+    }
+
+    /**
+     * compute the total page number by the total result number shown in the first result page,
+     * if the page size isn't configured, it's the info link number of the same page, so the first page is loaded only once
+     * @param keyword
+     * @return -1 if the total result number isn't configured or can't be extracted
+     */
+    private int extractTotalPageNum(String keyword) {
+        String totalXpath = Constant.urlBaseConf.getTotalXpath();
+        String totalRegex = Constant.urlBaseConf.getTotalRegex();
+        if (StringUtils.isBlank(totalXpath) && StringUtils.isBlank(totalRegex)) {
+            return -1;
+        }
+        String firstLink = buildQueryLink(keyword, 1);
+        String xpath = StringUtils.isNotBlank(totalXpath) ? totalXpath : "//body";
+        Integer pageSize = Constant.urlBaseConf.getPageSize();
+        Optional<String> text;
+        if (pageSize == null || pageSize <= 0) {
+            WebBrowser.PageLinks firstPage = browser.getLinksAndContent(firstLink, collector, xpath);
+            pageSize = firstPage.getLinks().size();
+            text = firstPage.getContent();
+        } else {
+            text = browser.getPageContent(firstLink, xpath);
+        }
+        if (!text.isPresent()) {
+            logger.warn("can't get the total result number of {}, use probing instead", keyword);
+            return -1;
+        }
+        Matcher matcher = Pattern.compile(StringUtils.isNotBlank(totalRegex) ? totalRegex : "\\d[\\d,]*").matcher(text.get());
+        if (!matcher.find()) {
+            logger.warn("can't extract the total result number of {} from {}, use probing instead", keyword, text.get());
+            return -1;
+        }
+        String totalStr = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+        int total;
+        try {
+            total = Integer.parseInt(totalStr.replace(",", "").trim());
+        } catch (NumberFormatException ex) {
+            logger.warn("the total result number {} of {} isn't a number, use probing instead", totalStr, keyword);
+            return -1;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        if (pageSize == 0) {
+            return -1;
+        }
+        logger.trace("total result number is {}, page size is {}", total, pageSize);
+        return clampPageNum(keyword, (total + pageSize - 1) / pageSize);
     }
-    private int getEndPageNum(int startNum, int endNum, String keyword) {
-        String endContent = browser.getPageContent(buildQueryLink(keyword,endNum)).get();
+
+    /**
+     * clamp the page number computed by the total result number to the result pages which the site really serves,
+     * many sites report the total result number but only serve the results under a cap, the pages beyond it are empty,
+     * the last page is checked first, only when it's empty, the last non-empty page is found by binary search
+     * @param keyword
+     * @param num
+     * @return
+     */
+    private int clampPageNum(String keyword, int num) {
+        if (num <= 1 || !collectLinks(buildQueryLink(keyword, num)).isEmpty()) {
+            return num;
+        }
+        //page low has info links, page high is empty
+        int low = 1, high = num;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (collectLinks(buildQueryLink(keyword, mid)).isEmpty()) {
+                high = mid;
+            } else {
+                low = mid;
+            }
+        }
+        logger.info("the total result number of {} indicates {} pages, but the site only serves {} pages", keyword, num, low);
+        return low;
+    }
+
+    private int getEndPageNum(int startNum, int endNum, String keyword, Map<Integer, PageSignature> signatures) {
+        PageSignature endSignature = getSignature(keyword, endNum, signatures);
         while (startNum < endNum) {
             int mid = (startNum + endNum) / 2;
-            String midContent = browser.getPageContent(buildQueryLink(keyword, mid)).get();
+            PageSignature midSignature = getSignature(keyword, mid, signatures);
             logger.trace("mid num is {}", mid);
-            if(isSimilarity(midContent, endContent)) {
+            if(isSimilarity(midSignature, endSignature)) {
                 endNum = mid;
             } else {
                 startNum = mid;
@@ -94,48 +287,60 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
     /**
      * incremental to get the first empty page number
      * @param keyword
+     * @param signatures
      * @return
      */
-    private int incrementNum(String keyword) {
+    private int incrementNum(String keyword, Map<Integer, PageSignature> signatures) {
         int cur = 1;
-        String testURL = buildQueryLink(keyword, cur);
 
-        //the pre page's content
-        String preContent = browser.getPageContent(testURL).get();
-        //the current page's content
-        String curContent;
+        //the pre page's signature
+        PageSignature preSignature = getSignature(keyword, cur, signatures);
+        //the current page's signature
+        PageSignature curSignature;
         logger.trace("increment page num to {}", cur);
         while (true) {
             cur *= 2;
-            testURL = buildQueryLink(keyword, cur);
-            curContent = browser.getPageContent(testURL).orElse("");
+            curSignature = getSignature(keyword, cur, signatures);
             logger.trace("increment page num to {}", cur);
-            if (isSimilarity(preContent, curContent)) break; //if current page is similar with the pre page, it seems that this two page are empty pages
-            preContent = curContent;
+            if (isSimilarity(preSignature, curSignature)) break; //if current page is similar with the pre page, it seems that this two page are empty pages
+            preSignature = curSignature;
         }
         return cur/2;//return this first empty page number
     }
+
+    /**
+     * get the signature of the specified result page, computed on the result region located by infoLinkXpath,
+     * if the result region can't be found, such as the page after the last result page, the whole page is used
+     * @param keyword
+     * @param pageNum
+     * @param signatures the cache of the signatures in current probing
+     * @return
+     */
+    private PageSignature getSignature(String keyword, int pageNum, Map<Integer, PageSignature> signatures) {
+        return signatures.computeIfAbsent(pageNum, num -> {
+            String queryLink = buildQueryLink(keyword, num);
+            Optional<String> content = Optional.empty();
+            if (StringUtils.isNotBlank(Constant.urlBaseConf.getInfoLinkXpath())) {
+                content = browser.getPageContent(queryLink, Constant.urlBaseConf.getInfoLinkXpath());
+            }
+            if (!content.isPresent()) {
+                content = browser.getPageContent(queryLink);
+            }
+            return PageSignature.of(content.orElse(""));
+        });
+    }
+
     /**
      * judge that whether the two page are similar
-     * this method use NLP method to judge
-     * @param doc1
-     * @param doc2
+     * this method compares the MinHash signatures of the word shingles in the pages
+     * @param sig1
+     * @param sig2
      * @return
      */
-    private boolean isSimilarity(String doc1, String doc2) {
-        Set<String> result = new HashSet<>();
-        String[] page1 = NlpAnalysis.parse(doc1).toString().split(",");
-        String[] page2 = NlpAnalysis.parse(doc2).toString().split(",");
-        Set<String> set1 = new HashSet<>();
-        Set<String> set2 = new HashSet<>();
-        set1.addAll(Arrays.asList(page1));
-        set2.addAll(Arrays.asList(page2));
-        double or = 0;
-        result.addAll(set1);
-        result.retainAll(set2);
-        or = (double) result.size() / set1.size();
+    private boolean isSimilarity(PageSignature sig1, PageSignature sig2) {
+        double or = sig1.similarity(sig2);
         logger.trace("similarity is {}", or);
-        return or > 0.95;
+        return or > PageSignature.SIMILAR_THRESHOLD;
     }
 //    private boolean isSimilarity(String doc1, String doc2) {
 //        LevenshteinDistance distance = LevenshteinDistance.getDefaultInstance();//used to compute text distance
@@ -149,12 +354,55 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
      * @return
      */
     public QueryLinks getQueryLinks(String keyword) {
+        if (Constant.YIELD_THRESHOLD > 0) {
+            //probe the first page before the page number search, which costs several requests
+            List<Info> links = collectLinks(buildQueryLink(keyword, 1));
+            long newNum = links.stream().filter(link -> !dedu.contains(link.getUrl())).count();
+            double yield = links.isEmpty() ? 0 : newNum / (double) links.size();
+            if (yield < Constant.YIELD_THRESHOLD) {
+                //only the first page is crawled
+                logger.info("the yield of the first page is {}, skip the page number search", yield);
+                int num = links.isEmpty() ? 0 : 1;
+                this.totalLinkNum.addAndGet(num);
+                return new UrlBaseQueryLinks(num, keyword).setProbedLinks(links);
+            }
+            //the first page is harvested by the probed links instead of loading it again
+            return searchQueryLinks(keyword).setProbedLinks(links);
+        }
+        return searchQueryLinks(keyword);
+    }
+
+    /**
+     * get all the query links corresponding to the keyword without probing the yield
+     * @param keyword
+     * @return
+     */
+    private UrlBaseQueryLinks searchQueryLinks(String keyword) {
+        if (Constant.STREAMING) {
+            //the end of the query is detected when downloading
+            return new UrlBaseQueryLinks(keyword);
+        }
         int num = getTotalPageNum(keyword);
         logger.info("total page num is {}", num);
-        this.totalLinkNum = num;
+        this.totalLinkNum.addAndGet(num);
         return new UrlBaseQueryLinks(num, keyword);
     }
 
+    /**
+     * the info link number in the first result page
+     * @param keyword
+     * @return
+     */
+    @Override
+    public int probe(String keyword) {
+        return collectLinks(buildQueryLink(keyword, 1)).size();
+    }
+
+    @Override
+    public int probePageNum(String keyword) {
+        return getTotalPageNum(keyword);
+    }
+
     /**
      * judge whether the specified link is a query link or not
      * @param link
@@ -184,10 +432,28 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
      * @return
      */
     public List<Info> getInfoLinks(String queryLink) {
-        List<Info> links = null;
-        links = browser.getAllLinks(Query.asUrlBased(queryLink), collector);
+        return getInfoLinks(queryLink, null);
+    }
+
+    /**
+     * get info links from the page pointed by the query link, and report the yield of the page
+     * @param queryLink
+     * @param queryLinks the query which the query link belongs to, can be null
+     * @return
+     */
+    public List<Info> getInfoLinks(String queryLink, QueryLinks queryLinks) {
+        List<Info> all = queryLinks instanceof UrlBaseQueryLinks ? ((UrlBaseQueryLinks) queryLinks).takeProbedLinks(queryLink) : null;
+        if (all == null) {
+            all = collectLinks(queryLink);
+        }
+        //remove the repeated links
+        Deduplicator.Tally tally = queryLinks == null ? null : queryLinks.getTally();
+        List<Info> links = all.stream().filter(link -> dedu.add(link.getUrl(), tally)).collect(Collectors.toList());
+        if (queryLinks != null) {
+            queryLinks.report(links.size(), all);
+        }
         if (links.size() == 0) {//record the number of failed query links
-            this.failedLinkNum++;
+            this.failedLinkNum.incrementAndGet();
             return Collections.emptyList();
         }
         logger.trace("queryLink:{}, infoLinks after dedu:{}", queryLink, Arrays.toString(links.toArray()));
@@ -196,9 +462,39 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
 
 
     public class UrlBaseQueryLinks extends QueryLinks {
+        private final String keyword;
+        /**
+         * the info links of the first page found when probing the yield, null if not probed or has been taken
+         */
+        private List<Info> probedLinks;
 
         private UrlBaseQueryLinks(int pageNum, String keyword) {
             super(pageNum, keyword);
+            this.keyword = keyword;
+        }
+
+        private UrlBaseQueryLinks(String keyword) {
+            super(keyword);
+            this.keyword = keyword;
+        }
+
+        private UrlBaseQueryLinks setProbedLinks(List<Info> links) {
+            this.probedLinks = links;
+            return this;
+        }
+
+        /**
+         * take the probed info links if the query link is the first page
+         * @param queryLink
+         * @return null if the query link isn't probed
+         */
+        private synchronized List<Info> takeProbedLinks(String queryLink) {
+            if (probedLinks == null || !queryLink.equals(buildQueryLink(keyword, 1))) {
+                return null;
+            }
+            List<Info> links = probedLinks;
+            probedLinks = null;
+            return links;
         }
 
         @Override
@@ -211,6 +507,7 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
 
     /**
      * InfoLinkCollector collect the info links from query page
+     * the repeated links aren't removed here, so the collector can be used without affecting the deduplicator
      */
     class InfoLinkCollector extends LinkCollector {
 
@@ -219,14 +516,8 @@ public class UrlBaseQueryLinkService extends QueryLinkService {
         }
         @Override
         public List<Info> privateOp(List<Info> links) {
-            links = links.stream().filter(link -> {//remove the repeated links and query links
-                if (isQueryLink(link.getUrl())) {
-                    return false;
-                } else {
-                    return dedu.add(link.getUrl());
-                }
-            }).collect(Collectors.toList());
-            return links;
+            //remove the query links
+            return links.stream().filter(link -> !isQueryLink(link.getUrl())).collect(Collectors.toList());
         }
     }
 }
@@ -0,0 +1,106 @@
+package algorithm;
+
+import com.cufe.deepweb.algorithm.AlgorithmBase;
+import com.cufe.deepweb.algorithm.BanditAlgorithm;
+import com.cufe.deepweb.common.dedu.Deduplicator;
+import com.cufe.deepweb.common.index.IndexClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+public class BanditTest {
+    private static final String FIELD = "fulltext";
+    static IndexClient client;
+
+    /**
+     * word i occurs in the first (i + 1) * 10 documents, so its DF is (i + 1) * 10
+     */
+    @BeforeAll
+    static void init() throws IOException {
+        client = new IndexClient.Builder(Files.createTempDirectory("bandit")).build();
+        for (int d = 0; d < 1000; d++) {
+            StringBuilder content = new StringBuilder();
+            for (int i = d / 10; i < 100; i++) {
+                content.append("w").append(i).append(' ');
+            }
+            Map<String, String> doc = new HashMap<>();
+            doc.put(FIELD, content.toString());
+            client.addDocument(doc);
+        }
+        client.updateIndex();
+    }
+    @AfterAll
+    static void exit() throws IOException {
+        client.close();
+    }
+
+    @Test
+    void testLearnBestBucket() {
+        FixedDedu dedu = new FixedDedu();
+        AlgorithmBase algo = new BanditAlgorithm.Builder(client, dedu).setMainField(FIELD).build();
+        algo.getNextQuery();//the initial query
+        Set<String> terms = new HashSet<>();
+        int goodNum = 0;
+        for (int i = 0; i < 40; i++) {
+            String term = algo.getNextQuery();
+            Assertions.assertTrue(terms.add(term), term);
+            int df = (Integer.parseInt(term.substring(1)) + 1) * 10;
+            //only the terms whose DF is in [256, 512) return new documents
+            boolean good = df >= 256 && df < 512;
+            if (good) goodNum++;
+            dedu.record(100);
+            algo.feedback(good ? 80 : 0);
+        }
+        Assertions.assertTrue(goodNum >= 20, "good terms: " + goodNum);
+    }
+
+    @Test
+    void testHarvestUncommitted() throws IOException {
+        try (IndexClient writer = new IndexClient.Builder(Files.createTempDirectory("bandit")).build()) {
+            for (int d = 0; d < 10; d++) {
+                writer.addDocument(Collections.singletonMap(FIELD, d == 0 ? "alpha beta gamma" : "alpha beta"));
+            }
+            FixedDedu dedu = new FixedDedu();
+            AlgorithmBase algo = new BanditAlgorithm.Builder(writer, dedu).setMainField(FIELD).build();
+            algo.getNextQuery();//the initial query
+            Set<String> terms = new HashSet<>();
+            terms.add(algo.getNextQuery());
+            terms.add(algo.getNextQuery());
+            Assertions.assertEquals(new HashSet<>(Arrays.asList("alpha", "beta")), terms);
+            //the DF of gamma grows up to minDF in the new documents
+            writer.addDocument(Collections.singletonMap(FIELD, "gamma"));
+            Assertions.assertEquals("gamma", algo.getNextQuery());
+            //the terms are harvested without committing the index
+            Assertions.assertEquals(0, writer.getDocSize());
+        }
+    }
+
+    static class FixedDedu extends Deduplicator<String> {
+        void record(int cost) {
+            costV += cost;
+        }
+
+        @Override
+        public boolean add(String o) {
+            return true;
+        }
+
+        @Override
+        public boolean contains(String o) {
+            return false;
+        }
+
+        @Override
+        public int getTotal() {
+            return 0;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
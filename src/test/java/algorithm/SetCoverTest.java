@@ -0,0 +1,534 @@
+package algorithm;
+
+import com.cufe.deepweb.algorithm.CostModel;
+import com.cufe.deepweb.algorithm.SetCoverAlgorithm;
+import com.cufe.deepweb.common.index.DFHistogram;
+import com.cufe.deepweb.common.index.DocIdBitmap;
+import com.cufe.deepweb.common.index.TermDocMatrix;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+public class SetCoverTest {
+    private static final int DOC_SIZE = 2_000;
+    private static final int TERM_SIZE = 300;
+    private static final int SENDING_COST = 100;
+
+    /**
+     * build a random term-docID matrix, the DF of each term is between 1% and 15% of the documents
+     */
+    private static Map<String, Set<Integer>> randomMatrix(long seed) {
+        Random r = new Random(seed);
+        Map<String, Set<Integer>> matrix = new HashMap<>();
+        for (int i = 0; i < TERM_SIZE; i++) {
+            int df = DOC_SIZE / 100 + r.nextInt(DOC_SIZE * 14 / 100);
+            Set<Integer> docSet = new HashSet<>();
+            while (docSet.size() < df) {
+                docSet.add(r.nextInt(DOC_SIZE));
+            }
+            matrix.put("t" + i, docSet);
+        }
+        return matrix;
+    }
+
+    /**
+     * the original full-scan greedy selection, used as the reference
+     */
+    private static List<String> fullScan(Map<String, Set<Integer>> matrix, int num) {
+        return fullScan(matrix, num, (newNum, df) -> newNum / (double)(df + SENDING_COST));
+    }
+
+    /**
+     * @param rate compute new/cost from the new value and DF
+     */
+    private static List<String> fullScan(Map<String, Set<Integer>> matrix, int num, BiFunction<Integer, Integer, Double> rate) {
+        Map<String, Set<Integer>> newMap = new HashMap<>();
+        matrix.forEach((k, v) -> newMap.put(k, new HashSet<>(v)));
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < num; i++) {
+            String query = null;
+            double maxRate = 0.0;
+            for (Map.Entry<String, Set<Integer>> entry : newMap.entrySet()) {
+                if (entry.getValue().isEmpty()) continue;
+                int df = matrix.get(entry.getKey()).size();
+                double curRate = rate.apply(entry.getValue().size(), df);
+                if (query == null || curRate > maxRate
+                        || (curRate == maxRate && df > matrix.get(query).size())
+                        || (curRate == maxRate && df == matrix.get(query).size() && entry.getKey().compareTo(query) < 0)) {
+                    maxRate = curRate;
+                    query = entry.getKey();
+                }
+            }
+            if (query == null) break;
+            Set<Integer> deleted = newMap.remove(query);
+            newMap.values().forEach(set -> set.removeAll(deleted));
+            terms.add(query);
+        }
+        return terms;
+    }
+
+    @Test
+    void testSameTermsAsFullScan() {
+        for (long seed = 0; seed < 5; seed++) {
+            Map<String, Set<Integer>> matrix = randomMatrix(seed);
+            FixedAlgorithm algo = new FixedAlgorithm(matrix);
+            algo.getNextQuery();//the initial query
+            List<String> terms = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                terms.add(algo.getNextQuery());
+            }
+            Assertions.assertEquals(fullScan(matrix, 20), terms);
+        }
+    }
+
+    @Test
+    void testBatchQueries() {
+        Map<String, Set<Integer>> matrix = randomMatrix(9);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix);
+        //the initial query can't be followed by other queries
+        Assertions.assertEquals(1, algo.getNextQueries(5).size());
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<String> batch = algo.getNextQueries(5);
+            Assertions.assertEquals(5, batch.size());
+            terms.addAll(batch);
+        }
+        Assertions.assertEquals(fullScan(matrix, 20), terms);
+        Assertions.assertEquals(21, algo.getqList().size());
+    }
+
+    /**
+     * the speculated query should be the same as the query inferred after downloading
+     */
+    @Test
+    void testSpeculatedQuery() {
+        Map<String, Set<Integer>> matrix = randomMatrix(11);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix);
+        algo.getNextQuery();//the initial query
+        algo.speculate();//no matrix to speculate
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            terms.add(algo.getNextQuery());
+            algo.speculate();
+        }
+        Assertions.assertEquals(fullScan(matrix, 20), terms);
+    }
+
+    @Test
+    void testPrefetchedMatrix() {
+        Map<String, Set<Integer>> matrix = randomMatrix(7);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix);
+        algo.supportSnapshot = true;
+        algo.prefetch();
+        algo.getNextQuery();//the initial query
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            terms.add(algo.getNextQuery());
+        }
+        algo.close();
+        Assertions.assertEquals(fullScan(matrix, 20), terms);
+        Assertions.assertEquals(1, algo.closedSnapshotNum);
+    }
+
+    /**
+     * the documents downloaded after prefetching make the prefetched matrix stale
+     */
+    @Test
+    void testDocumentsAfterPrefetch() {
+        Map<String, Set<Integer>> matrix = randomMatrix(8);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix);
+        algo.supportSnapshot = true;
+        algo.prefetch();
+        //a new term which only occurs in the new documents, it's the best pick of the next turn
+        Set<Integer> docSet = new HashSet<>();
+        for (int i = 0; i < DOC_SIZE / 5; i++) {
+            docSet.add(DOC_SIZE + i);
+        }
+        matrix.put("fresh", docSet);
+        algo.docSize = DOC_SIZE + docSet.size();
+        algo.getNextQuery();//the initial query
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            terms.add(algo.getNextQuery());
+        }
+        algo.close();
+        Assertions.assertEquals("fresh", terms.get(0));
+        Assertions.assertEquals(fullScan(matrix, 20), terms);
+        Assertions.assertEquals(1, algo.closedSnapshotNum);
+    }
+
+    /**
+     * the matrix prefetched after a round's documents are indexed is used by the next turn
+     */
+    @Test
+    void testPrefetchAfterRound() {
+        Map<String, Set<Integer>> matrix = randomMatrix(10);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix);
+        algo.supportSnapshot = true;
+        algo.getNextQuery();//the initial query
+        algo.getNextQuery();
+        //the round downloads new documents, the best pick of the next turn only occurs in them
+        Set<Integer> docSet = new HashSet<>();
+        for (int i = 0; i < DOC_SIZE / 5; i++) {
+            docSet.add(DOC_SIZE + i);
+        }
+        matrix.put("fresh", docSet);
+        algo.docSize = DOC_SIZE + docSet.size();
+        algo.newTurn = true;
+        algo.prefetch();
+        int builtNum = algo.builtNum;
+        Map<String, Set<Integer>> left = new HashMap<>(matrix);
+        left.keySet().removeAll(algo.getqList());
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            terms.add(algo.getNextQuery());
+        }
+        algo.close();
+        Assertions.assertEquals(builtNum, algo.builtNum);
+        Assertions.assertEquals(1, algo.closedSnapshotNum);
+        Assertions.assertEquals("fresh", terms.get(0));
+        Assertions.assertEquals(fullScan(left, 20), terms);
+    }
+
+    /**
+     * a new turn started because current turn can't generate term more should reset the per-turn state too
+     */
+    @Test
+    void testExhaustedTurn() {
+        Map<String, Set<Integer>> matrix = new HashMap<>();
+        matrix.put("a", new HashSet<>(Arrays.asList(0, 1, 2, 3)));
+        matrix.put("b", new HashSet<>(Arrays.asList(0, 1)));
+        FixedAlgorithm algo = new FixedAlgorithm(matrix);
+        algo.getNextQuery();//the initial query
+        Assertions.assertEquals("a", algo.getNextQuery());
+        Assertions.assertEquals(1, algo.turnNum);
+        //b has no new document in the first turn
+        Assertions.assertEquals("b", algo.getNextQuery());
+        Assertions.assertEquals(2, algo.turnNum);
+    }
+
+    @Test
+    void testOutOfCore() throws IOException {
+        Path spillPath = Files.createTempDirectory("spill");
+        for (long seed = 0; seed < 3; seed++) {
+            Map<String, Set<Integer>> matrix = randomMatrix(seed);
+            FixedAlgorithm algo = new FixedAlgorithm(matrix, spillPath);
+            algo.getNextQuery();//the initial query
+            List<String> terms = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                terms.add(algo.getNextQuery());
+            }
+            algo.close();
+            Assertions.assertEquals(fullScan(matrix, 20), terms);
+        }
+        //the spilled file should be deleted after closing
+        try (Stream<Path> files = Files.list(spillPath)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * the measured cost is 10 + DF * 0.05 seconds, which is in proportion to DF + 200
+     */
+    @Test
+    void testMeasuredCost() {
+        CostModel costModel = new CostModel();
+        Assertions.assertFalse(costModel.isReady());
+        costModel.record(100, 10, 200, 10_000, 5_000);
+        Assertions.assertTrue(costModel.isReady());
+        Assertions.assertEquals(15, costModel.estimate(100), 1e-9);
+        for (long seed = 0; seed < 3; seed++) {
+            Map<String, Set<Integer>> matrix = randomMatrix(seed);
+            FixedAlgorithm algo = new FixedAlgorithm(matrix, null, costModel);
+            algo.getNextQuery();//the initial query
+            List<String> terms = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                terms.add(algo.getNextQuery());
+            }
+            Assertions.assertEquals(fullScan(matrix, 20, (newNum, df) -> newNum / (double)(df + 200)), terms);
+        }
+    }
+
+    /**
+     * each query of a batch is measured with its own DF
+     */
+    @Test
+    void testBatchMeasure() {
+        Map<String, Set<Integer>> matrix = randomMatrix(12);
+        List<Integer> recorded = new ArrayList<>();
+        CostModel costModel = new CostModel() {
+            @Override
+            public synchronized void record(int df, int pageNum, int linkNum, long probeMillis, long downloadMillis) {
+                recorded.add(df);
+                super.record(df, pageNum, linkNum, probeMillis, downloadMillis);
+            }
+        };
+        FixedAlgorithm algo = new FixedAlgorithm(matrix, null, costModel);
+        String initQuery = algo.getNextQueries(3).get(0);
+        algo.measure(initQuery, 10, 200, 10_000, 5_000);
+        List<String> batch = algo.getNextQueries(3);
+        Assertions.assertEquals(3, batch.size());
+        for (String query : batch) {
+            algo.measure(query, 10, 200, 10_000, 5_000);
+        }
+        Assertions.assertEquals(-1, (int) recorded.get(0));
+        for (int i = 0; i < batch.size(); i++) {
+            Assertions.assertEquals(matrix.get(batch.get(i)).size(), (int) recorded.get(i + 1));
+        }
+        Assertions.assertTrue(costModel.isReady());
+    }
+
+    /**
+     * after 3 queries hit 10 pages, the result cap is 10 pages, which is DF 100,
+     * the term whose DF is bigger than 100 can only return 100 documents
+     */
+    @Test
+    void testResultCap() {
+        CostModel costModel = new CostModel();
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(-1, costModel.getCapPageNum());
+            costModel.record(i == 0 ? 100 : -1, 10, 200, 10_000, 5_000);
+        }
+        Assertions.assertEquals(10, costModel.getCapPageNum());
+        Assertions.assertEquals(100, costModel.getCapDF(), 1e-9);
+        double fixedCost = costModel.getFixedCost();
+        double costPerDF = costModel.getCostPerDF();
+        double capDF = costModel.getCapDF();
+        Map<String, Set<Integer>> matrix = randomMatrix(3);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix, null, costModel);
+        algo.getNextQuery();//the initial query
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            terms.add(algo.getNextQuery());
+        }
+        Assertions.assertEquals(fullScan(matrix, 20, (newNum, df) -> df <= capDF
+                ? newNum / (fixedCost + df * costPerDF)
+                : newNum * (capDF / df) / (fixedCost + capDF * costPerDF)), terms);
+        Assertions.assertNotEquals(fullScan(matrix, 20, (newNum, df) -> newNum / (fixedCost + df * costPerDF)), terms);
+    }
+
+    /**
+     * the capped terms should be narrowed by conjunctive queries whose result is under the cap,
+     * the queries are written in the site's syntax and verified by the probe before being selected
+     */
+    @Test
+    void testConjunctiveQuery() {
+        CostModel costModel = cappedCostModel();
+        Map<String, Set<Integer>> matrix = randomMatrix(5);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix, null, costModel, 2000);
+        Set<String> probed = ConcurrentHashMap.newKeySet();
+        //the site returns 2 links per document in 20 links per page
+        algo.setPageNumProbe(query -> {
+            probed.add(query);
+            return (intersect(matrix, query).size() * 2 + 19) / 20;
+        });
+        algo.getNextQuery();//the initial query
+        int conjunctionNum = 0;
+        for (int i = 0; i < 100; i++) {
+            String query = algo.getNextQuery();
+            if (!query.contains(" AND ")) continue;
+            conjunctionNum++;
+            Assertions.assertTrue(probed.contains(query), query);
+            String[] terms = query.split(" AND ");
+            Assertions.assertTrue(terms.length <= 3, query);
+            //a query of 10 pages may be truncated by the cap, so it's rejected
+            Assertions.assertTrue(intersect(matrix, query).size() <= 90, query);
+            Assertions.assertTrue(matrix.get(terms[0]).size() > costModel.getCapDF(), query);
+        }
+        Assertions.assertTrue(conjunctionNum > 0);
+    }
+
+    /**
+     * the conjunctive queries hitting nothing on the site, such as the site doesn't support the syntax, are never selected,
+     * and without a probe no conjunctive query is built
+     */
+    @Test
+    void testConjunctionRejectedByProbe() {
+        for (boolean withProbe : new boolean[]{true, false}) {
+            Map<String, Set<Integer>> matrix = randomMatrix(5);
+            FixedAlgorithm algo = new FixedAlgorithm(matrix, null, cappedCostModel(), 2000);
+            AtomicInteger probeNum = new AtomicInteger(0);
+            if (withProbe) {
+                algo.setPageNumProbe(query -> {
+                    probeNum.incrementAndGet();
+                    return 0;
+                });
+            }
+            algo.getNextQuery();//the initial query
+            for (int i = 0; i < 100; i++) {
+                String query = algo.getNextQuery();
+                Assertions.assertFalse(query.contains(" AND "), query);
+            }
+            Assertions.assertEquals(withProbe, probeNum.get() > 0);
+        }
+    }
+
+    /**
+     * the conjunctive queries are probed one by one in the building thread, and at most 32 of them in a turn
+     */
+    @Test
+    void testConjunctionProbeBudget() {
+        Map<String, Set<Integer>> matrix = randomMatrix(6);
+        FixedAlgorithm algo = new FixedAlgorithm(matrix, null, cappedCostModel(), 4000);
+        Set<Thread> probeThreads = ConcurrentHashMap.newKeySet();
+        AtomicInteger probeNum = new AtomicInteger(0);
+        algo.setPageNumProbe(query -> {
+            probeThreads.add(Thread.currentThread());
+            probeNum.incrementAndGet();
+            return 0;
+        });
+        algo.getNextQuery();//the initial query
+        algo.getNextQuery();
+        Assertions.assertEquals(1, algo.turnNum);
+        Assertions.assertEquals(32, probeNum.get());
+        Assertions.assertEquals(Collections.singleton(Thread.currentThread()), probeThreads);
+    }
+
+    /**
+     * after 3 queries hit 10 pages, the result cap is 10 pages, which is DF 100
+     */
+    private static CostModel cappedCostModel() {
+        CostModel costModel = new CostModel();
+        for (int i = 0; i < 3; i++) {
+            costModel.record(i == 0 ? 100 : -1, 10, 200, 10_000, 5_000);
+        }
+        return costModel;
+    }
+
+    private static Set<Integer> intersect(Map<String, Set<Integer>> matrix, String query) {
+        String[] terms = query.split(" AND ");
+        Set<Integer> docs = new HashSet<>(matrix.get(terms[0]));
+        for (String term : terms) {
+            docs.retainAll(matrix.get(term));
+        }
+        return docs;
+    }
+
+    /**
+     * set covering algorithm over a fixed matrix, only one turn of set covering
+     */
+    static class FixedAlgorithm extends SetCoverAlgorithm {
+        private Map<String, Set<Integer>> matrix;
+        private boolean supportSnapshot = false;
+        private int closedSnapshotNum = 0;
+        private int docSize = DOC_SIZE;
+        /**
+         * start a new turn at the next query
+         */
+        private boolean newTurn = false;
+        /**
+         * the number of matrices built on the current index
+         */
+        private int builtNum = 0;
+        private int turnNum = 0;
+        FixedAlgorithm(Map<String, Set<Integer>> matrix) {
+            this(matrix, null);
+        }
+        FixedAlgorithm(Map<String, Set<Integer>> matrix, Path spillPath) {
+            this(matrix, spillPath, new CostModel());
+        }
+        FixedAlgorithm(Map<String, Set<Integer>> matrix, Path spillPath, CostModel costModel) {
+            this(matrix, spillPath, costModel, 0);
+        }
+        FixedAlgorithm(Map<String, Set<Integer>> matrix, Path spillPath, CostModel costModel, int pairBudget) {
+            super(new Builder().setThreshold(1.0).setSendingCost(SENDING_COST).setSpillPath(spillPath).setCostModel(costModel).setPairBudget(pairBudget)
+                    .setConjunctionSyntax("%s AND %s"));
+            this.matrix = matrix;
+        }
+
+        @Override
+        protected boolean isUpdate() {
+            boolean update = getSetCoverSize() == 0 || newTurn;
+            newTurn = false;
+            return update;
+        }
+
+        @Override
+        protected void update() { }
+
+        @Override
+        protected void onNewTurn() {
+            turnNum++;
+        }
+
+        @Override
+        protected TermDocMatrix getDocSetMap(String field, double low, double up) {
+            builtNum++;
+            return toDocSetMap(matrix);
+        }
+
+        @Override
+        protected DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+            return toDFHistogram(matrix, excludedTerms);
+        }
+
+        @Override
+        protected int getDocSize() {
+            return docSize;
+        }
+
+        @Override
+        protected MatrixSource openSnapshot() {
+            if (!supportSnapshot) {
+                return null;
+            }
+            //the documents added after opening the snapshot are invisible to it
+            Map<String, Set<Integer>> frozen = new HashMap<>();
+            matrix.forEach((k, v) -> frozen.put(k, new HashSet<>(v)));
+            int frozenSize = docSize;
+            return new MatrixSource() {
+                @Override
+                public TermDocMatrix getDocSetMap(String field, double low, double up) {
+                    return toDocSetMap(frozen);
+                }
+
+                @Override
+                public DFHistogram getDFHistogram(String field, Collection<String> excludedTerms) {
+                    return toDFHistogram(frozen, excludedTerms);
+                }
+
+                @Override
+                public TermDocMatrix spillDocSetMap(String field, double low, double up, Path dir) throws IOException {
+                    return toDocSetMap(frozen).spill(dir);
+                }
+
+                @Override
+                public int getDocSize() {
+                    return frozenSize;
+                }
+
+                @Override
+                public void close() {
+                    closedSnapshotNum++;
+                }
+            };
+        }
+
+        private static TermDocMatrix toDocSetMap(Map<String, Set<Integer>> matrix) {
+            TermDocMatrix copy = new TermDocMatrix();
+            new TreeMap<>(matrix).forEach((k, v) -> {
+                DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+                new TreeSet<>(v).forEach(builder::add);
+                copy.setPostings(copy.addTerm(new BytesRef(k)), builder.build());
+            });
+            return copy;
+        }
+
+        private static DFHistogram toDFHistogram(Map<String, Set<Integer>> matrix, Collection<String> excludedTerms) {
+            DFHistogram histogram = new DFHistogram(DOC_SIZE);
+            matrix.forEach((k, v) -> {
+                if (!excludedTerms.contains(k)) histogram.add(v.size());
+            });
+            return histogram;
+        }
+    }
+}
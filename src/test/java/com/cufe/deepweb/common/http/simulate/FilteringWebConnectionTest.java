@@ -0,0 +1,70 @@
+package com.cufe.deepweb.common.http.simulate;
+
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * the web connection is tested on a mock connection, so no request is sent to network,
+ * it's in the same package because the filtering is internal to HtmlUnitBrowser
+ */
+public class FilteringWebConnectionTest {
+  @Test
+  void testBlockedHosts() throws Exception {
+    WebClient client = new WebClient();
+    MockWebConnection mock = new MockWebConnection();
+    mock.setDefaultResponse("<html></html>");
+    client.setWebConnection(mock);
+    FilteringWebConnection connection = new FilteringWebConnection(client, new StaticResourceCache(), new HashSet<>(Arrays.asList("tracker.com")));
+    try {
+      //the host itself and its sub domains are blocked
+      for (String url : new String[]{"http://tracker.com/a.js", "http://cdn.eu.tracker.com/a.js", "http://CDN.Tracker.com/a.js"}) {
+        WebResponse response = connection.getResponse(new WebRequest(new URL(url)));
+        Assertions.assertEquals(200, response.getStatusCode());
+        Assertions.assertEquals("", response.getContentAsString());
+      }
+      Assertions.assertEquals(0, mock.getRequestCount());
+      //the hosts which only share a suffix of string are not blocked
+      for (String url : new String[]{"http://nottracker.com/a.js", "http://tracker.com.example.org/a.js", "http://example.org/tracker.com"}) {
+        connection.getResponse(new WebRequest(new URL(url)));
+      }
+      Assertions.assertEquals(3, mock.getRequestCount());
+    } finally {
+      client.close();
+    }
+  }
+
+  @Test
+  void testRevalidation() throws Exception {
+    WebClient client = new WebClient();
+    MockWebConnection mock = new MockWebConnection();
+    URL url = new URL("http://example.org/static/app.js");
+    mock.setResponse(url, "var answer = 42;", 200, "OK", "application/javascript",
+        Collections.singletonList(new NameValuePair("ETag", "\"v1\"")));
+    client.setWebConnection(mock);
+    FilteringWebConnection connection = new FilteringWebConnection(client, new StaticResourceCache(), null);
+    try {
+      Assertions.assertEquals("var answer = 42;", connection.getResponse(new WebRequest(url)).getContentAsString());
+      Assertions.assertNull(mock.getLastAdditionalHeaders().get("If-None-Match"));
+
+      //the server answers the conditional request with 304, the kept content is used
+      mock.setResponse(url, "", 304, "Not Modified", "application/javascript", Collections.emptyList());
+      WebResponse response = connection.getResponse(new WebRequest(url));
+      Assertions.assertEquals("\"v1\"", mock.getLastAdditionalHeaders().get("If-None-Match"));
+      Assertions.assertEquals(200, response.getStatusCode());
+      Assertions.assertEquals("var answer = 42;", response.getContentAsString());
+      Assertions.assertEquals(2, mock.getRequestCount());
+    } finally {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package http;
+
+import com.cufe.deepweb.common.http.PageCache;
+import com.cufe.deepweb.common.http.simulate.HtmlUnitBrowser;
+import com.cufe.deepweb.common.http.simulate.LinkCollector;
+import com.cufe.deepweb.common.orm.model.UrlBaseConf;
+import com.cufe.deepweb.crawler.Constant;
+import com.cufe.deepweb.crawler.service.infos.info.Info;
+import com.cufe.deepweb.crawler.service.querys.query.Query;
+import com.gargoylesoftware.htmlunit.CookieManager;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PageCacheTest {
+  @Test
+  void testPageCache() {
+    StringBuilder page = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      page.append("<div class=\"result\"><a href=\"/doc/").append(i).append("\">结果 ").append(i).append("</a></div>\n");
+    }
+    Constant.round = 1;
+    PageCache cache = new PageCache(64 * 1024);
+    cache.put("xml:page1", page.toString());
+    Assertions.assertEquals(page.toString(), cache.get("xml:page1"));
+    Assertions.assertNull(cache.get("xml:page2"));
+    Assertions.assertEquals(0.5, cache.getHitRate());
+
+    //the least recently used page is evicted
+    for (int i = 2; i <= 100; i++) {
+      cache.put("xml:page" + i, page.toString() + i);
+    }
+    Assertions.assertNull(cache.get("xml:page1"));
+    Assertions.assertNotNull(cache.get("xml:page100"));
+
+    //the cache is cleared in a new round
+    Constant.round = 2;
+    Assertions.assertNull(cache.get("xml:page100"));
+    Constant.round = 0;
+  }
+
+  @Test
+  void testProbeThenHarvest() throws Exception {
+    AtomicInteger requestNum = new AtomicInteger(0);
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/search", exchange -> {
+      requestNum.incrementAndGet();
+      StringBuilder page = new StringBuilder("<html><body><div id=\"total\">3 results</div>");
+      for (int i = 0; i < 3; i++) {
+        page.append("<div class=\"result\"><a href=\"/doc/").append(i).append("\">结果 ").append(i).append("</a></div>");
+      }
+      byte[] body = page.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    UrlBaseConf conf = Constant.urlBaseConf;
+    Constant.urlBaseConf = new UrlBaseConf();
+    Constant.urlBaseConf.setInfoLinkXpath("//div[@class='result']/a");
+    Constant.urlBaseConf.setPrefix("http://127.0.0.1:" + server.getAddress().getPort() + "/search");
+    Constant.urlBaseConf.setParamQuery("q");
+    Constant.urlBaseConf.setTotalXpath("//div[@id='total']");
+    Constant.round = 1;
+    HtmlUnitBrowser browser = new HtmlUnitBrowser(new CookieManager(), 10_000, new PageCache(1024 * 1024), 2);
+    try {
+      String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/search?q=a&page=1";
+      //the probing reads the total number, the result region and the whole text of the page
+      Optional<String> total = browser.getPageContent(url, "//div[@id='total']");
+      Optional<String> region = browser.getPageContent(url, Constant.urlBaseConf.getInfoLinkXpath());
+      Optional<String> text = browser.getPageContent(url);
+      //the harvesting collects the info links of the same page
+      List<Info> links = browser.getAllLinks(Query.asUrlBased(url), new LinkCollector() {
+        @Override
+        public List<Info> privateOp(List<Info> links) {
+          return links;
+        }
+      });
+      Assertions.assertEquals(1, requestNum.get());
+      Assertions.assertTrue(total.get().contains("3 results"));
+      Assertions.assertTrue(region.get().contains("结果 2"));
+      Assertions.assertTrue(text.get().contains("结果 0"));
+      Assertions.assertEquals(3, links.size());
+      Assertions.assertTrue(links.get(0).getUrl().endsWith("/doc/0"));
+      //the page which isn't a result page isn't cached
+      String searchPage = "http://127.0.0.1:" + server.getAddress().getPort() + "/search";
+      browser.getPageContent(searchPage);
+      browser.getPageContent(searchPage);
+      Assertions.assertEquals(3, requestNum.get());
+    } finally {
+      browser.clearResource();
+      server.stop(0);
+      Constant.urlBaseConf = conf;
+      Constant.round = 0;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package http;
+
+import com.cufe.deepweb.common.http.simulate.WebClientPool;
+import com.gargoylesoftware.htmlunit.WebClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WebClientPoolTest {
+  private final AtomicInteger createdNum = new AtomicInteger(0);
+  private final AtomicInteger closedNum = new AtomicInteger(0);
+
+  private WebClient newClient() {
+    createdNum.incrementAndGet();
+    return new WebClient() {
+      @Override
+      public void close() {
+        closedNum.incrementAndGet();
+        super.close();
+      }
+    };
+  }
+
+  @Test
+  void testBorrowAndGiveBack() {
+    WebClientPool pool = new WebClientPool(this::newClient, 2, 10);
+    WebClient a = pool.borrow();
+    WebClient b = pool.borrow();
+    Assertions.assertNotSame(a, b);
+    Assertions.assertEquals(2, pool.getSize());
+    pool.giveBack(a, 1);
+    pool.giveBack(b, 1);
+    Assertions.assertEquals(2, pool.getIdleSize());
+    //the latest returned client is borrowed first
+    Assertions.assertSame(b, pool.borrow());
+    Assertions.assertEquals(2, createdNum.get());
+    //the client which isn't created by the pool is ignored
+    pool.giveBack(newClient(), 1);
+    Assertions.assertEquals(2, pool.getSize());
+    pool.clear();
+    Assertions.assertEquals(1, closedNum.get());
+    Assertions.assertEquals(1, pool.getSize());
+  }
+
+  @Test
+  void testRecycle() {
+    WebClientPool pool = new WebClientPool(this::newClient, 1, 10);
+    WebClient a = pool.borrow();
+    pool.giveBack(a, 6);
+    Assertions.assertSame(a, pool.borrow());
+    //the client has served 10 pages in total
+    pool.giveBack(a, 4);
+    Assertions.assertEquals(1, closedNum.get());
+    Assertions.assertEquals(0, pool.getSize());
+    Assertions.assertNotSame(a, pool.borrow());
+    Assertions.assertEquals(2, createdNum.get());
+  }
+
+  @Test
+  void testBounded() throws Exception {
+    WebClientPool pool = new WebClientPool(this::newClient, 1, 10);
+    WebClient a = pool.borrow();
+    CompletableFuture<WebClient> waiting = CompletableFuture.supplyAsync(pool::borrow);
+    Thread.sleep(200);
+    Assertions.assertFalse(waiting.isDone());
+    pool.giveBack(a, 1);
+    Assertions.assertSame(a, waiting.get(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(1, createdNum.get());
+  }
+
+  @Test
+  void testFailedCreation() {
+    AtomicInteger failNum = new AtomicInteger(1);
+    WebClientPool pool = new WebClientPool(() -> {
+      if (failNum.getAndDecrement() > 0) {
+        throw new IllegalStateException("fail to create web client");
+      }
+      return newClient();
+    }, 1, 10);
+    Assertions.assertThrows(IllegalStateException.class, pool::borrow);
+    //the place reserved for the failed client is released
+    Assertions.assertNotNull(pool.borrow());
+    Assertions.assertEquals(1, pool.getSize());
+  }
+}
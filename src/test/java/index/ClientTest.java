@@ -2,6 +2,7 @@ package index;
 
 import com.cufe.deepweb.common.Utils;
 import com.cufe.deepweb.common.index.IndexClient;
+import com.cufe.deepweb.common.index.TermDocMatrix;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -54,7 +55,7 @@ public class ClientTest {
   void testDocSetMapMemory() {
     System.out.println("record doc set map memory");
     Utils.logMemorySize();
-    Map map = client.getDocSetMap("body", 0.02, 0.15);
+    TermDocMatrix matrix = client.getDocSetMap("body", 0.02, 0.15);
     Utils.logMemorySize();
   }
 }
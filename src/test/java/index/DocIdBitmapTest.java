@@ -0,0 +1,79 @@
+package index;
+
+import com.cufe.deepweb.common.index.DocIdBitmap;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+public class DocIdBitmapTest {
+    /**
+     * build a docID set which has both sparse blocks and dense blocks
+     */
+    private static TreeSet<Integer> randomDocs(Random r, int maxDoc) {
+        TreeSet<Integer> docs = new TreeSet<>();
+        for (int i = 0; i < maxDoc; i++) {
+            //the first 65536 docIDs are dense, the others are sparse
+            if (r.nextInt(i < 65536 ? 4 : 100) == 0) {
+                docs.add(i);
+            }
+        }
+        return docs;
+    }
+    private static DocIdBitmap build(Set<Integer> docs) {
+        DocIdBitmap.Builder builder = new DocIdBitmap.Builder();
+        docs.forEach(builder::add);
+        return builder.build();
+    }
+
+    @Test
+    void testSetOperations() {
+        Random r = new Random(7);
+        int maxDoc = 300_000;
+        TreeSet<Integer> a = randomDocs(r, maxDoc);
+        TreeSet<Integer> b = randomDocs(r, maxDoc);
+        DocIdBitmap bitmapA = build(a);
+        DocIdBitmap bitmapB = build(b);
+        Assertions.assertEquals(a.size(), bitmapA.cardinality());
+        Assertions.assertEquals(a.last() + 1, bitmapA.length());
+
+        List<Integer> visited = new ArrayList<>();
+        bitmapA.forEach(visited::add);
+        Assertions.assertEquals(new ArrayList<>(a), visited);
+
+        FixedBitSet covered = new FixedBitSet(maxDoc);
+        bitmapB.orInto(covered);
+        Assertions.assertEquals(b.size(), covered.cardinality());
+
+        Set<Integer> diff = new HashSet<>(a);
+        diff.removeAll(b);
+        Assertions.assertEquals(diff.size(), bitmapA.andNotCardinality(covered));
+    }
+
+    /**
+     * the buffer of a block grows from a few docIDs to the boundary between array and bitmap
+     */
+    @Test
+    void testBlockBoundary() {
+        for (int size : new int[]{1, 17, 4096, 4097}) {
+            TreeSet<Integer> docs = new TreeSet<>();
+            for (int i = 0; i < size; i++) {
+                docs.add(65536 + i * 3);
+            }
+            DocIdBitmap bitmap = build(docs);
+            List<Integer> visited = new ArrayList<>();
+            bitmap.forEach(visited::add);
+            Assertions.assertEquals(new ArrayList<>(docs), visited);
+            Assertions.assertEquals(size, bitmap.cardinality());
+        }
+    }
+
+    @Test
+    void testMemoryCost() {
+        TreeSet<Integer> docs = randomDocs(new Random(7), 3_000_000);
+        DocIdBitmap bitmap = build(docs);
+        System.out.println("docs:" + docs.size() + " bytes:" + bitmap.ramBytesUsed());
+        Assertions.assertTrue(bitmap.ramBytesUsed() < docs.size() * 4L);
+    }
+}
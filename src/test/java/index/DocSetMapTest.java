@@ -0,0 +1,240 @@
+package index;
+
+import com.cufe.deepweb.common.index.DFHistogram;
+import com.cufe.deepweb.common.index.IndexClient;
+import com.cufe.deepweb.common.index.SpilledPostings;
+import com.cufe.deepweb.common.index.TermDocMatrix;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DocSetMapTest {
+    private static final String FIELD = "fulltext";
+    static Path dir;
+    static IndexClient client;
+    /**
+     * the content of each document in the order of adding
+     */
+    static List<Set<String>> docs = new ArrayList<>();
+    static Random r = new Random(11);
+
+    @BeforeAll
+    static void init() throws IOException {
+        dir = Files.createTempDirectory("docSetMap");
+        client = new IndexClient.Builder(dir).build();
+    }
+    @AfterAll
+    static void exit() throws IOException {
+        client.close();
+    }
+
+    /**
+     * add some random documents, every call would generate a new sub index after updating index
+     */
+    private static void addDocuments(int num) {
+        for (int i = 0; i < num; i++) {
+            Set<String> words = new TreeSet<>();
+            for (int j = 0; j < 20; j++) {
+                words.add("w" + r.nextInt(200));
+            }
+            docs.add(words);
+            Map<String, String> doc = new HashMap<>();
+            doc.put(FIELD, String.join(" ", words));
+            client.addDocument(doc);
+        }
+        client.updateIndex();
+    }
+
+    private static void assertDocSetMap(double low, double up) {
+        TermDocMatrix docSetMap = client.getDocSetMap(FIELD, low, up);
+        Map<String, List<Integer>> expected = new HashMap<>();
+        for (int i = 0; i < docs.size(); i++) {
+            for (String word : docs.get(i)) {
+                expected.computeIfAbsent(word, k -> new ArrayList<>()).add(i);
+            }
+        }
+        expected.values().removeIf(list -> list.size() <= low * docs.size() || list.size() > up * docs.size());
+        //the term ID should follow the order of term
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < docSetMap.size(); i++) {
+            terms.add(docSetMap.getTermString(i));
+        }
+        Assertions.assertEquals(new ArrayList<>(new TreeSet<>(expected.keySet())), terms);
+        expected.forEach((term, list) -> {
+            List<Integer> actual = new ArrayList<>();
+            docSetMap.getPostings(docSetMap.find(new BytesRef(term))).forEach(actual::add);
+            Assertions.assertEquals(list, actual, term);
+        });
+    }
+
+    private static void assertDFHistogram(double low, double up) {
+        Map<String, Integer> dfMap = new HashMap<>();
+        docs.forEach(words -> words.forEach(word -> dfMap.merge(word, 1, Integer::sum)));
+        String excluded = dfMap.keySet().iterator().next();
+        long expected = dfMap.entrySet().stream()
+                .filter(e -> !e.getKey().equals(excluded))
+                .filter(e -> e.getValue() > low * docs.size() && e.getValue() <= up * docs.size())
+                .count();
+        DFHistogram histogram = client.getDFHistogram(FIELD, Collections.singletonList(excluded));
+        Assertions.assertEquals(dfMap.size() - 1, histogram.getTermNum());
+        Assertions.assertEquals(expected, histogram.count(low, up));
+    }
+
+    /**
+     * the spilled docID sets should be the same as the docID sets in heap
+     */
+    private static void assertSpilledDocSetMap(double low, double up) throws IOException {
+        TermDocMatrix inHeap = client.getDocSetMap(FIELD, low, up);
+        TermDocMatrix spilled = client.spillDocSetMap(FIELD, low, up, Files.createTempDirectory("spill"));
+        Assertions.assertEquals(inHeap.size(), spilled.size());
+        SpilledPostings postings = spilled.getSpilledPostings();
+        for (int i = 0; i < inHeap.size(); i++) {
+            Assertions.assertEquals(inHeap.getTermString(i), spilled.getTermString(i));
+            List<Integer> expected = new ArrayList<>();
+            inHeap.getPostings(i).forEach(expected::add);
+            List<Integer> actual = new ArrayList<>();
+            postings.forEach(i, actual::add);
+            Assertions.assertEquals(expected, actual);
+            Assertions.assertEquals(expected.size(), postings.cardinality(i));
+        }
+        postings.close();
+    }
+
+    @Test
+    void testSnapshot() throws IOException {
+        IndexClient writer = new IndexClient.Builder(Files.createTempDirectory("snapshot")).build();
+        for (int i = 0; i < 200; i++) {
+            Map<String, String> doc = new HashMap<>();
+            doc.put(FIELD, i < 100 ? "committed" : "snapshot");
+            writer.addDocument(doc);
+            if (i == 99) writer.updateIndex();
+        }
+        //the documents which haven't been committed can be seen by a new snapshot
+        IndexClient.Snapshot snapshot = writer.openSnapshot();
+        Assertions.assertEquals(100, writer.getDocSize());
+        Assertions.assertEquals(200, snapshot.getDocSize());
+        TermDocMatrix matrix = snapshot.getDocSetMap(FIELD, 0, 1);
+        Assertions.assertEquals(2, matrix.size());
+        List<Integer> actual = new ArrayList<>();
+        matrix.getPostings(matrix.find(new BytesRef("snapshot"))).forEach(actual::add);
+        Assertions.assertEquals(100, actual.size());
+        Assertions.assertEquals(100, (int) actual.get(0));
+        snapshot.close();
+        writer.close();
+    }
+
+    /**
+     * the candidate terms shortlisted by DF sketch should be the same as enumerating the term dictionary,
+     * both for the documents loaded from existing index and the documents added later
+     */
+    @Test
+    void testDFSketch() throws IOException {
+        Path sketchDir = Files.createTempDirectory("sketch");
+        Random random = new Random(7);
+        Map<String, Integer> dfMap = new HashMap<>();
+        for (int round = 0; round < 2; round++) {
+            IndexClient sketchClient = new IndexClient.Builder(sketchDir).setDFSketch(FIELD).build();
+            for (int i = 0; i < 500; i++) {
+                Set<String> words = new TreeSet<>();
+                for (int j = 0; j < 20; j++) {
+                    words.add("w" + random.nextInt(200));
+                }
+                words.forEach(word -> dfMap.merge(word, 1, Integer::sum));
+                Map<String, String> doc = new HashMap<>();
+                doc.put(FIELD, String.join(" ", words));
+                sketchClient.addDocument(doc);
+            }
+            sketchClient.updateIndex();
+            int size = sketchClient.getDocSize();
+            Set<String> expected = new TreeSet<>();
+            dfMap.forEach((word, df) -> {
+                if (df > 0.05 * size && df <= 0.1 * size) expected.add(word);
+            });
+            TermDocMatrix matrix = sketchClient.getDocSetMap(FIELD, 0.05, 0.1);
+            List<String> actual = new ArrayList<>();
+            for (int i = 0; i < matrix.size(); i++) {
+                actual.add(matrix.getTermString(i));
+                Assertions.assertEquals((int) dfMap.get(matrix.getTermString(i)), matrix.getPostings(i).cardinality());
+            }
+            Assertions.assertEquals(new ArrayList<>(expected), actual);
+            Assertions.assertEquals(expected.size(), sketchClient.getDFHistogram(FIELD).count(0.05, 0.1));
+            sketchClient.close();
+        }
+    }
+
+    /**
+     * with a tiny sketch, the estimation is loose and most terms are evicted from the heavy-hitters table,
+     * the candidate terms should still be the same as enumerating the term dictionary
+     */
+    @Test
+    void testDFSketchEviction() throws IOException {
+        Random random = new Random(11);
+        Map<String, Integer> dfMap = new HashMap<>();
+        IndexClient sketchClient = new IndexClient.Builder(Files.createTempDirectory("sketch")).setDFSketch(FIELD).setDFSketchSize(64, 128).build();
+        for (int i = 0; i < 500; i++) {
+            Set<String> words = new TreeSet<>();
+            for (int j = 0; j < 20; j++) {
+                //the words with small number are frequent
+                words.add("w" + (int) Math.abs(random.nextGaussian() * 300));
+            }
+            words.forEach(word -> dfMap.merge(word, 1, Integer::sum));
+            sketchClient.addDocument(Collections.singletonMap(FIELD, String.join(" ", words)));
+        }
+        sketchClient.updateIndex();
+        int size = sketchClient.getDocSize();
+        double[][] bounds = {{0.05, 0.1}, {0.002, 0.01}};
+        for (double[] bound : bounds) {
+            Set<String> expected = new TreeSet<>();
+            dfMap.forEach((word, df) -> {
+                if (df > bound[0] * size && df <= bound[1] * size) expected.add(word);
+            });
+            TermDocMatrix matrix = sketchClient.getDocSetMap(FIELD, bound[0], bound[1]);
+            List<String> actual = new ArrayList<>();
+            for (int i = 0; i < matrix.size(); i++) {
+                actual.add(matrix.getTermString(i));
+            }
+            Assertions.assertEquals(new ArrayList<>(expected), actual);
+        }
+        sketchClient.close();
+    }
+
+    @Test
+    void testIncrementalExtraction() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            addDocuments(500);
+            assertDocSetMap(0.02, 0.15);
+            assertDocSetMap(0.05, 0.1);
+            assertDFHistogram(0.02, 0.15);
+            assertSpilledDocSetMap(0.02, 0.15);
+        }
+    }
+
+    /**
+     * the cached dictionaries and docID sets of the sub indexes are shared by the extractions running at the same time
+     */
+    @Test
+    void testConcurrentExtraction() throws Exception {
+        addDocuments(300);
+        addDocuments(300);
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            double up = i % 2 == 0 ? 0.15 : 0.1;
+            futures.add(service.submit(() -> assertDocSetMap(0.02, up)));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        service.shutdown();
+    }
+}
@@ -2,9 +2,11 @@ package miscella;
 
 import com.cufe.deepweb.common.Utils;
 import com.cufe.deepweb.common.dedu.Deduplicator;
+import com.cufe.deepweb.common.dedu.PageSignature;
 import com.cufe.deepweb.common.dedu.RAMDocIDDedutor;
 import com.cufe.deepweb.common.dedu.RAMMD5Dedutor;
 import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 
@@ -19,6 +21,24 @@ public class DeduTest {
     }
   }
   @Test
+  void testTally() {
+    Deduplicator<Integer> dedu = new RAMDocIDDedutor();
+    Deduplicator.Tally a = new Deduplicator.Tally();
+    Deduplicator.Tally b = new Deduplicator.Tally();
+    dedu.add(1, a);
+    dedu.add(2, a);
+    dedu.add(1, b);
+    dedu.add(3, b);
+    //the queries in flight keep their own counters
+    Assertions.assertEquals(2, a.getNew());
+    Assertions.assertEquals(2, a.getCost());
+    Assertions.assertEquals(1, b.getNew());
+    Assertions.assertEquals(2, b.getCost());
+    //the global counters still count all of them
+    Assertions.assertEquals(3, dedu.getNew());
+    Assertions.assertEquals(4, dedu.getCost());
+  }
+  @Test
   void testHash() throws Exception{
     MessageDigest md5 = MessageDigest.getInstance("MD5");
     byte[] ans = md5.digest("md5hhhh".getBytes());
@@ -34,4 +54,33 @@ public class DeduTest {
     }
     Utils.logMemorySize();
   }
+  @Test
+  void testPageSignature() {
+    StringBuilder results = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      results.append("result ").append(i).append(" 中文检索结果标题 about deep web crawling\n");
+    }
+    PageSignature page = PageSignature.of(results.toString());
+    PageSignature same = PageSignature.of(results.toString());
+    PageSignature empty1 = PageSignature.of("no result found, page 16");
+    PageSignature empty2 = PageSignature.of("no result found, page 32");
+    Assertions.assertEquals(1.0, page.similarity(same));
+    Assertions.assertTrue(page.similarity(empty1) < 0.5);
+    Assertions.assertTrue(empty1.similarity(empty2) > 0.3);
+    Assertions.assertEquals(1.0, PageSignature.of("").similarity(PageSignature.of(" ")));
+  }
+  @Test
+  void testPageSignatureThreshold() {
+    Assertions.assertEquals(0.95, PageSignature.SIMILAR_THRESHOLD);
+    StringBuilder page = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      page.append("w").append(i).append(' ');
+    }
+    PageSignature signature = PageSignature.of(page.toString());
+    //the estimated similarity is a multiple of 1/64, so 61 equal min hashes are similar but 60 are not
+    Assertions.assertEquals(61 / 64.0, signature.similarity(PageSignature.of(page + "x0 x1 x2 x3 x4 x5 x6 x7 x8 x9 x10")));
+    Assertions.assertTrue(signature.isSimilar(PageSignature.of(page + "x0 x1 x2 x3 x4 x5 x6 x7 x8 x9 x10")));
+    Assertions.assertEquals(59 / 64.0, signature.similarity(PageSignature.of(page + "x0 x1 x2 x3 x4 x5 x6 x7 x8 x9 x10 x11 x12 x13")));
+    Assertions.assertFalse(signature.isSimilar(PageSignature.of(page + "x0 x1 x2 x3 x4 x5 x6 x7 x8 x9 x10 x11 x12 x13")));
+  }
 }
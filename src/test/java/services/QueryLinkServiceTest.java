@@ -2,19 +2,39 @@ package services;
 
 import com.cufe.deepweb.common.dedu.Deduplicator;
 import com.cufe.deepweb.common.dedu.RAMMD5Dedutor;
+import com.cufe.deepweb.common.http.client.CusHttpClient;
+import com.cufe.deepweb.common.http.client.resp.JsonContent;
+import com.cufe.deepweb.common.http.client.resp.RespContent;
 import com.cufe.deepweb.common.http.simulate.HtmlUnitBrowser;
 import com.cufe.deepweb.common.http.simulate.WebBrowser;
+import com.cufe.deepweb.common.orm.model.ExtraConf;
 import com.cufe.deepweb.common.orm.model.UrlBaseConf;
 import com.cufe.deepweb.common.orm.model.WebSite;
 import com.cufe.deepweb.crawler.Constant;
 import com.cufe.deepweb.crawler.service.infos.info.Info;
+import com.cufe.deepweb.crawler.service.querys.QueryLinkService;
 import com.cufe.deepweb.crawler.service.querys.UrlBaseQueryLinkService;
 import com.gargoylesoftware.htmlunit.CookieManager;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class QueryLinkServiceTest {
     static UrlBaseQueryLinkService service;
@@ -36,8 +56,331 @@ public class QueryLinkServiceTest {
             System.out.println(e.getUrl());
         }
     }
+
+    /**
+     * the site reports 100 results in 10 pages, but only serves the first 4 pages
+     */
+    @Test
+    void testTotalPageNumClamped() throws IOException {
+        SearchSite site = new SearchSite(100, 10, 4);
+        UrlBaseConf conf = Constant.urlBaseConf;
+        try {
+            Constant.urlBaseConf = site.conf();
+            Constant.urlBaseConf.setTotalXpath("//div[@id='total']");
+            UrlBaseQueryLinkService localService = new UrlBaseQueryLinkService(new HtmlUnitBrowser(new CookieManager(), 10_000), new RAMMD5Dedutor());
+            QueryLinkService.QueryLinks queryLinks = localService.getQueryLinks("a");
+            Assertions.assertEquals(4, queryLinks.getPageNum());
+            //the total result number and the page size are got from the same first page
+            Assertions.assertEquals(1, site.requestNum(1));
+        } finally {
+            Constant.urlBaseConf = conf;
+            site.close();
+        }
+    }
+
+    /**
+     * the result pages after the second one repeat the info links of the first page,
+     * so the rolling yield of 5 pages drops to 0.4 at page 5 and the following pages aren't generated
+     */
+    @Test
+    void testYieldStop() throws IOException {
+        SearchSite site = new SearchSite(100, 10, 10, 2);
+        UrlBaseConf conf = Constant.urlBaseConf;
+        try {
+            Constant.urlBaseConf = site.conf();
+            Constant.urlBaseConf.setTotalXpath("//div[@id='total']");
+            Constant.YIELD_THRESHOLD = 0.5;
+            UrlBaseQueryLinkService localService = new UrlBaseQueryLinkService(new HtmlUnitBrowser(new CookieManager(), 10_000), new RAMMD5Dedutor());
+            QueryLinkService.QueryLinks queryLinks = localService.getQueryLinks("a");
+            Assertions.assertEquals(10, queryLinks.getPageNum());
+            Assertions.assertEquals(10, localService.getTotalLinkNum());
+            harvest(localService, queryLinks);
+            Assertions.assertEquals(6, queryLinks.getCounter());
+            //the 5 pages which aren't generated are removed from the query link number
+            Assertions.assertEquals(5, localService.getTotalLinkNum());
+            Assertions.assertEquals(50, queryLinks.getLinkNum());
+            for (int page = 2; page <= 5; page++) {
+                Assertions.assertEquals(1, site.requestNum(page));
+            }
+            for (int page = 6; page < 10; page++) {
+                Assertions.assertEquals(0, site.requestNum(page));
+            }
+        } finally {
+            Constant.urlBaseConf = conf;
+            Constant.YIELD_THRESHOLD = 0;
+            site.close();
+        }
+    }
+
+    /**
+     * the first page probed for the yield is harvested without loading it again
+     */
+    @Test
+    void testProbedPageReused() throws IOException {
+        SearchSite site = new SearchSite(30, 10, 3);
+        UrlBaseConf conf = Constant.urlBaseConf;
+        try {
+            Constant.urlBaseConf = site.conf();
+            Constant.YIELD_THRESHOLD = 0.5;
+            Constant.STREAMING = true;
+            UrlBaseQueryLinkService localService = new UrlBaseQueryLinkService(new HtmlUnitBrowser(new CookieManager(), 10_000), new RAMMD5Dedutor());
+            QueryLinkService.QueryLinks queryLinks = localService.getQueryLinks("a");
+            Assertions.assertEquals(30, harvest(localService, queryLinks));
+            Assertions.assertEquals(1, site.requestNum(1));
+        } finally {
+            Constant.urlBaseConf = conf;
+            Constant.YIELD_THRESHOLD = 0;
+            Constant.STREAMING = false;
+            site.close();
+        }
+    }
+
+    /**
+     * in streaming mode, the query ends at the first empty page
+     */
+    @Test
+    void testStreamingEndByEmptyPage() throws IOException {
+        SearchSite site = new SearchSite(30, 10, 3);
+        streaming(site, null, (service, queryLinks) -> {
+            Assertions.assertEquals(30, harvest(service, queryLinks));
+            Assertions.assertEquals(5, queryLinks.getCounter());
+            Assertions.assertEquals(4, service.getTotalLinkNum());
+            Assertions.assertEquals(0, site.requestNum(5));
+        });
+    }
+
+    /**
+     * in streaming mode, the query ends at the page identical to an earlier page,
+     * such as the sites serving the first page for any page number beyond the last page
+     */
+    @Test
+    void testStreamingEndByRepeatedPage() throws IOException {
+        SearchSite site = new SearchSite(1000, 10, 100, 3);
+        streaming(site, null, (service, queryLinks) -> {
+            Assertions.assertEquals(30, harvest(service, queryLinks));
+            Assertions.assertEquals(5, queryLinks.getCounter());
+            Assertions.assertEquals(0, site.requestNum(5));
+        });
+    }
+
+    /**
+     * in streaming mode, the query ends after 5 successive pages without new info link
+     */
+    @Test
+    void testStreamingEndByFruitlessPages() throws IOException {
+        SearchSite site = new SearchSite(1000, 10, 100);
+        streaming(site, dedu -> {
+            //the info links after the second page have been downloaded by other queries
+            for (int page = 3; page <= 100; page++) {
+                for (int i = 0; i < 10; i++) {
+                    dedu.add(site.url("/doc/" + page + "/" + i));
+                }
+            }
+        }, (service, queryLinks) -> {
+            Assertions.assertEquals(20, harvest(service, queryLinks));
+            Assertions.assertEquals(8, queryLinks.getCounter());
+            Assertions.assertEquals(0, site.requestNum(8));
+        });
+    }
+
+    /**
+     * the static HTML contains all the info links, so the query pages after the calibration are only fetched by the HTTP client
+     */
+    @Test
+    void testStaticFetchCalibrated() throws IOException {
+        SearchSite site = new SearchSite(100, 10, 10);
+        StaticClient client = new StaticClient(html -> html);
+        calibrate(site, client, () -> {
+            for (int page = 1; page <= 3; page++) {
+                Assertions.assertEquals(2, site.requestNum(page));
+            }
+            for (int page = 4; page <= 10; page++) {
+                Assertions.assertEquals(1, site.requestNum(page));
+            }
+            Assertions.assertEquals(10, client.fetchNum.get());
+        });
+    }
+
+    /**
+     * the info links are rendered by script, so the HTTP client is given up after the first page
+     */
+    @Test
+    void testStaticFetchRejected() throws IOException {
+        SearchSite site = new SearchSite(100, 10, 10);
+        StaticClient client = new StaticClient(html -> html.replaceAll("<div class=\"result\">.*?</div>", ""));
+        calibrate(site, client, () -> {
+            for (int page = 1; page <= 10; page++) {
+                Assertions.assertEquals(page == 1 ? 2 : 1, site.requestNum(page));
+            }
+            Assertions.assertEquals(1, client.fetchNum.get());
+        });
+    }
+
+    /**
+     * collect the info links of all the served pages with the HTTP client, each page must yield its info links
+     */
+    private static void calibrate(SearchSite site, CusHttpClient client, Runnable check) {
+        UrlBaseConf conf = Constant.urlBaseConf;
+        try {
+            Constant.urlBaseConf = site.conf();
+            UrlBaseQueryLinkService localService = new UrlBaseQueryLinkService(new HtmlUnitBrowser(new CookieManager(), 10_000), new RAMMD5Dedutor(), client);
+            for (int page = 1; page <= 10; page++) {
+                Assertions.assertEquals(10, localService.getInfoLinks(site.url("/search?q=a&page=" + page)).size());
+            }
+            check.run();
+        } finally {
+            Constant.urlBaseConf = conf;
+            site.close();
+        }
+    }
+
+    /**
+     * the HTTP client which gets the static HTML of a page, the HTML can be transformed to simulate the pages rendered by script
+     */
+    static class StaticClient implements CusHttpClient {
+        private final Function<String, String> transform;
+        private final AtomicInteger fetchNum = new AtomicInteger(0);
+
+        StaticClient(Function<String, String> transform) {
+            this.transform = transform;
+        }
+
+        @Override
+        public RespContent getContent(String URL) {
+            fetchNum.incrementAndGet();
+            try (InputStream in = new URL(URL).openStream()) {
+                return RespContent.asString(transform.apply(IOUtils.toString(in, StandardCharsets.UTF_8)));
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public JsonContent getJSON(String URL) {
+            return null;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    /**
+     * get the query links of a keyword from the site in streaming mode, and check them
+     * @param site
+     * @param init initialize the deduplicator, can be null
+     * @param check
+     */
+    private static void streaming(SearchSite site, Consumer<Deduplicator> init, BiConsumer<UrlBaseQueryLinkService, QueryLinkService.QueryLinks> check) {
+        UrlBaseConf conf = Constant.urlBaseConf;
+        try {
+            Constant.urlBaseConf = site.conf();
+            Constant.STREAMING = true;
+            Deduplicator dedu = new RAMMD5Dedutor();
+            if (init != null) {
+                init.accept(dedu);
+            }
+            UrlBaseQueryLinkService localService = new UrlBaseQueryLinkService(new HtmlUnitBrowser(new CookieManager(), 10_000), dedu);
+            QueryLinkService.QueryLinks queryLinks = localService.getQueryLinks("a");
+            Assertions.assertEquals(Integer.MAX_VALUE, queryLinks.getPageNum());
+            check.accept(localService, queryLinks);
+        } finally {
+            Constant.urlBaseConf = conf;
+            Constant.STREAMING = false;
+            site.close();
+        }
+    }
+
+    /**
+     * harvest the query links one by one like a single producer
+     * @return the new info link number
+     */
+    private static int harvest(UrlBaseQueryLinkService service, QueryLinkService.QueryLinks queryLinks) {
+        int num = 0;
+        String link;
+        while ((link = queryLinks.next()) != null) {
+            num += service.getInfoLinks(link, queryLinks).size();
+        }
+        return num;
+    }
+
     @AfterAll
     static void close() {
         service.clearThreadResource();
     }
+
+    /**
+     * a local search site whose result pages are numbered from 1, and whose info links are /doc/{page}/{i}
+     */
+    static class SearchSite {
+        private final HttpServer server;
+        private final Map<Integer, AtomicInteger> requestNums = new ConcurrentHashMap<>();
+
+        SearchSite(int total, int pageSize, int servedPageNum) throws IOException {
+            this(total, pageSize, servedPageNum, servedPageNum);
+        }
+
+        /**
+         * @param total the total result number shown in the result pages
+         * @param pageSize
+         * @param servedPageNum the pages beyond it are empty
+         * @param freshPageNum the served pages beyond it repeat the info links of the first page
+         */
+        SearchSite(int total, int pageSize, int servedPageNum, int freshPageNum) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/search", exchange -> {
+                int page = 1;
+                for (String pair : exchange.getRequestURI().getQuery().split("&")) {
+                    if (pair.startsWith("page=")) {
+                        page = Integer.parseInt(pair.substring(5));
+                    }
+                }
+                requestNums.computeIfAbsent(page, p -> new AtomicInteger()).incrementAndGet();
+                StringBuilder html = new StringBuilder("<html><body><div id=\"total\">about ").append(total).append(" results</div>");
+                if (page <= servedPageNum) {
+                    int linkPage = page <= freshPageNum ? page : 1;
+                    for (int i = 0; i < pageSize; i++) {
+                        html.append("<div class=\"result\"><a href=\"/doc/").append(linkPage).append('/').append(i).append("\">result ").append(i).append("</a></div>");
+                    }
+                } else {
+                    html.append("<div class=\"empty\">no more results</div>");
+                }
+                byte[] body = html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+        }
+
+        String url(String path) {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        }
+
+        UrlBaseConf conf() {
+            if (Constant.extraConf == null) {
+                Constant.extraConf = new ExtraConf();
+                Constant.extraConf.setCharset("utf-8");
+            }
+            UrlBaseConf conf = new UrlBaseConf();
+            conf.setPrefix(url("/search?"));
+            conf.setParamQuery("q");
+            conf.setParamPage("page");
+            conf.setStartPageNum("1,1");
+            conf.setParamList("");
+            conf.setParamValueList("");
+            conf.setInfoLinkXpath("//div[@class='result']/a");
+            return conf;
+        }
+
+        int requestNum(int page) {
+            AtomicInteger num = requestNums.get(page);
+            return num == null ? 0 : num.get();
+        }
+
+        void close() {
+            server.stop(0);
+        }
+    }
 }